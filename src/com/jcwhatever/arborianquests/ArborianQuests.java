@@ -28,11 +28,17 @@ import com.jcwhatever.arborianquests.click.ClickContext;
 import com.jcwhatever.arborianquests.click.ClickExemptNpcTrait;
 import com.jcwhatever.arborianquests.click.GlobalClickListener;
 import com.jcwhatever.arborianquests.commands.users.BaseCommand;
+import com.jcwhatever.arborianquests.dialog.output.DialogOutputListener;
 import com.jcwhatever.arborianquests.items.ScriptItemManager;
 import com.jcwhatever.arborianquests.locations.ScriptLocationManager;
 import com.jcwhatever.arborianquests.quests.QuestManager;
+import com.jcwhatever.arborianquests.quests.progress.PlayerShardListener;
+import com.jcwhatever.arborianquests.quests.progress.ProgressStorageMode;
 import com.jcwhatever.arborianquests.regions.ScriptRegionManager;
 import com.jcwhatever.arborianquests.scripting.QuestsApi;
+import com.jcwhatever.arborianquests.storage.ParallelLoader;
+import com.jcwhatever.arborianquests.storage.PersistencePipeline;
+import com.jcwhatever.arborianquests.storage.SaveQueue;
 import com.jcwhatever.arborianquests.waypoints.WaypointsManager;
 import com.jcwhatever.nucleus.Nucleus;
 import com.jcwhatever.nucleus.NucleusPlugin;
@@ -42,8 +48,6 @@ import com.jcwhatever.nucleus.managed.scripting.SimpleScriptApi;
 import com.jcwhatever.nucleus.managed.scripting.SimpleScriptApi.IApiObjectCreator;
 import com.jcwhatever.nucleus.mixins.IDisposable;
 import com.jcwhatever.nucleus.providers.npc.INpcProvider;
-import com.jcwhatever.nucleus.providers.storage.DataStorage;
-import com.jcwhatever.nucleus.storage.DataPath;
 import com.jcwhatever.nucleus.storage.IDataNode;
 import com.jcwhatever.nucleus.utils.text.TextColor;
 import org.bukkit.plugin.Plugin;
@@ -76,6 +80,8 @@ public class ArborianQuests extends NucleusPlugin {
     private WaypointsManager _waypointsManager;
     private ScriptItemManager _scriptItemManager;
     private ClickContext _globalClickContext;
+    private PersistencePipeline _persistencePipeline;
+    private SaveQueue _saveQueue;
 
     private IScriptApi _scriptApi;
     private IDataNode _metaNode;
@@ -115,6 +121,13 @@ public class ArborianQuests extends NucleusPlugin {
         return _instance._scriptItemManager;
     }
 
+    /**
+     * Get the write-behind save queue.
+     */
+    public static SaveQueue getSaveQueue() {
+        return _instance._saveQueue;
+    }
+
     /**
      * Get the global NPC click context.
      */
@@ -146,20 +159,22 @@ public class ArborianQuests extends NucleusPlugin {
 
         _instance = this;
 
-        _metaNode = DataStorage.get(ArborianQuests.getPlugin(), new DataPath("meta"));
-        _metaNode.load();
+        // clamp settings so a zero or negative value does not prevent the plugin from enabling
+        int saveThreads = Math.max(1, getDataNode().getInteger("save-threads", 2));
+        int saveInterval = Math.max(1, getDataNode().getInteger("save-interval-ticks", 20));
 
-        IDataNode regionNode = DataStorage.get(this, new DataPath("regions"));
-        regionNode.load();
+        _persistencePipeline = new PersistencePipeline(this, saveThreads);
+        _saveQueue = new SaveQueue(this, _persistencePipeline, saveInterval);
 
-        IDataNode locationNode = DataStorage.get(this, new DataPath("locations"));
-        locationNode.load();
+        // data files are loaded in parallel, the quest manager waits for them to finish
+        ParallelLoader loader = new ParallelLoader(Math.max(1, getDataNode().getInteger("load-threads",
+                Math.min(4, Runtime.getRuntime().availableProcessors()))));
 
-        IDataNode waypointsNode = DataStorage.get(this, new DataPath("waypoints"));
-        waypointsNode.load();
-
-        IDataNode itemsNode = DataStorage.get(this, new DataPath("items"));
-        itemsNode.load();
+        _metaNode = loader.load("meta", _saveQueue.getDataNode(this, "meta"));
+        IDataNode regionNode = loader.load("regions", _saveQueue.getDataNode(this, "regions"));
+        IDataNode locationNode = loader.load("locations", _saveQueue.getDataNode(this, "locations"));
+        IDataNode waypointsNode = loader.load("waypoints", _saveQueue.getDataNode(this, "waypoints"));
+        IDataNode itemsNode = loader.load("items", _saveQueue.getDataNode(this, "items"));
 
         INpcProvider provider = Nucleus.getProviders().getNpcs();
         if (provider != null) {
@@ -167,7 +182,7 @@ public class ArborianQuests extends NucleusPlugin {
         }
 
         _globalClickContext = new ClickContext();
-        _questManager = new QuestManager(this, getDataNode());
+        _questManager = new QuestManager(this, getDataNode(), loader);
         _scriptRegionManager = new ScriptRegionManager(regionNode);
         _scriptLocationManager = new ScriptLocationManager(locationNode);
         _waypointsManager = new WaypointsManager(waypointsNode);
@@ -175,6 +190,8 @@ public class ArborianQuests extends NucleusPlugin {
 
         registerCommand(BaseCommand.class);
 
+        QuestsApi.bindPathCache(_questManager);
+
         _scriptApi = new SimpleScriptApi(this, "quests", new IApiObjectCreator() {
             @Override
             public IDisposable create(Plugin plugin, IEvaluatedScript script) {
@@ -184,11 +201,21 @@ public class ArborianQuests extends NucleusPlugin {
 
         Nucleus.getScriptApiRepo().registerApi(_scriptApi);
         registerEventListeners(new GlobalClickListener(_globalClickContext));
+        registerEventListeners(_questManager.getPlayerViews());
+        registerEventListeners(new DialogOutputListener());
+
+        if (_questManager.getProgressStorage().getMode() == ProgressStorageMode.PLAYER)
+            registerEventListeners(new PlayerShardListener(_questManager));
     }
 
     @Override
     protected void onDisablePlugin() {
 
         Nucleus.getScriptApiRepo().unregisterApi(_scriptApi);
+
+        // write any pending changes and wait for background writes to finish
+        _saveQueue.dispose();
+        _persistencePipeline.dispose();
+        _questManager.getProgressStorage().dispose();
     }
 }
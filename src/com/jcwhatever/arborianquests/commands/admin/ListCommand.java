@@ -28,6 +28,7 @@ import com.jcwhatever.arborianquests.ArborianQuests;
 import com.jcwhatever.arborianquests.Lang;
 import com.jcwhatever.arborianquests.quests.PrimaryQuest;
 import com.jcwhatever.arborianquests.quests.Quest;
+import com.jcwhatever.arborianquests.quests.QuestManager;
 import com.jcwhatever.nucleus.managed.commands.CommandInfo;
 import com.jcwhatever.nucleus.managed.commands.arguments.ICommandArguments;
 import com.jcwhatever.nucleus.managed.commands.exceptions.InvalidArgumentException;
@@ -40,9 +41,12 @@ import com.jcwhatever.nucleus.managed.messaging.ChatTree.NodeLineWriter;
 import com.jcwhatever.nucleus.utils.text.TextUtils;
 import com.jcwhatever.nucleus.utils.text.TextUtils.FormatTemplate;
 
+import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 @CommandInfo(
         command = "list",
@@ -58,6 +62,11 @@ public class ListCommand extends AbstractCommand implements IExecutableCommand {
 
     @Localizable static final String _PAGINATOR_TITLE = "Quests";
 
+    // rendered lines are cached until the quest managers version changes
+    private int _version = -1;
+    private List<String> _lines;
+    private List<String> _searchIndex;
+
     @Override
     public void execute (CommandSender sender, ICommandArguments args) throws InvalidArgumentException {
 
@@ -65,11 +74,33 @@ public class ListCommand extends AbstractCommand implements IExecutableCommand {
 
         ChatPaginator pagin = createPagin(args, 7, Lang.get(_PAGINATOR_TITLE));
 
-        Collection<Quest> quests = ArborianQuests.getQuestManager().getQuests();
+        QuestManager manager = ArborianQuests.getQuestManager();
+        if (_lines == null || _version != manager.getVersion()) {
+            render(manager);
+        }
+
+        if (args.isDefaultValue("search")) {
+            pagin.addAll(_lines);
+        }
+        else {
+            String search = args.getString("search").toLowerCase();
+
+            for (int i = 0; i < _lines.size(); i++) {
+                if (_searchIndex.get(i).contains(search))
+                    pagin.add(_lines.get(i));
+            }
+        }
+
+        pagin.show(sender, page, FormatTemplate.RAW);
+    }
+
+    private void render(QuestManager manager) {
+
+        Collection<Quest> quests = manager.getQuests();
 
         ChatTree<Quest> questTree = new ChatTree<>(ArborianQuests.getPlugin(), quests);
 
-        pagin.addAll(questTree.toChatLines(new NodeLineWriter<Quest>() {
+        List<String> lines = new ArrayList<>(questTree.toChatLines(new NodeLineWriter<Quest>() {
             @Override
             public String write(Quest quest) {
                 return quest instanceof PrimaryQuest
@@ -79,9 +110,14 @@ public class ListCommand extends AbstractCommand implements IExecutableCommand {
             }
         }));
 
-        if (!args.isDefaultValue("search"))
-            pagin.setSearchTerm(args.getString("search"));
+        // lower case text without formatting used to match the search filter
+        List<String> searchIndex = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            searchIndex.add(ChatColor.stripColor(line).toLowerCase());
+        }
 
-        pagin.show(sender, page, FormatTemplate.RAW);
+        _lines = lines;
+        _searchIndex = searchIndex;
+        _version = manager.getVersion();
     }
 }
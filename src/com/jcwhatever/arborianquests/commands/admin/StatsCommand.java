@@ -0,0 +1,84 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.commands.admin;
+
+import com.jcwhatever.arborianquests.Lang;
+import com.jcwhatever.arborianquests.quests.Quest;
+import com.jcwhatever.arborianquests.quests.QuestStats;
+import com.jcwhatever.arborianquests.quests.QuestStatus;
+import com.jcwhatever.nucleus.managed.commands.CommandInfo;
+import com.jcwhatever.nucleus.managed.commands.arguments.ICommandArguments;
+import com.jcwhatever.nucleus.managed.commands.exceptions.CommandException;
+import com.jcwhatever.nucleus.managed.commands.mixins.IExecutableCommand;
+import com.jcwhatever.nucleus.managed.commands.utils.AbstractCommand;
+import com.jcwhatever.nucleus.managed.language.Localizable;
+
+import org.bukkit.command.CommandSender;
+
+import java.util.concurrent.TimeUnit;
+
+@CommandInfo(
+        command = "stats",
+        staticParams = { "questPath" },
+        description = "Show player statistics for the specified quest.",
+        paramDescriptions = {
+                "questPath= The path to the quest using dots as delimiters. i.e questName.subQuestName"
+        })
+
+public class StatsCommand extends AbstractCommand implements IExecutableCommand {
+
+    @Localizable static final String _PATH_NOT_FOUND = "Failed to find quest path '{0: quest path}'.";
+    @Localizable static final String _TITLE = "{YELLOW}Statistics for quest '{0}':";
+    @Localizable static final String _IN_PROGRESS = "{GRAY}In progress: {WHITE}{0} ({1} reruns)";
+    @Localizable static final String _COMPLETED = "{GRAY}Completed: {WHITE}{0} players";
+    @Localizable static final String _COMPLETIONS = "{GRAY}Total completions: {WHITE}{0}";
+    @Localizable static final String _AVERAGE_TIME = "{GRAY}Average time to complete: {WHITE}{0} minutes";
+    @Localizable static final String _AVERAGE_TIME_NONE = "{GRAY}Average time to complete: {WHITE}n/a";
+
+    @Override
+    public void execute (CommandSender sender, ICommandArguments args) throws CommandException {
+
+        String questPath = args.getString("questPath");
+
+        Quest quest = Quest.getQuestFromPath(questPath);
+        if (quest == null)
+            throw new CommandException(Lang.get(_PATH_NOT_FOUND, questPath));
+
+        QuestStats stats = quest.getStats();
+
+        tell(sender, Lang.get(_TITLE, questPath));
+        tell(sender, Lang.get(_IN_PROGRESS, stats.getInProgress(), stats.getCount(QuestStatus.RERUN)));
+        tell(sender, Lang.get(_COMPLETED, stats.getCount(QuestStatus.COMPLETED)));
+        tell(sender, Lang.get(_COMPLETIONS, stats.getCompletions()));
+
+        long average = stats.getAverageCompletionTime();
+        if (average < 0) {
+            tell(sender, Lang.get(_AVERAGE_TIME_NONE));
+        }
+        else {
+            tell(sender, Lang.get(_AVERAGE_TIME, TimeUnit.MILLISECONDS.toMinutes(average)));
+        }
+    }
+}
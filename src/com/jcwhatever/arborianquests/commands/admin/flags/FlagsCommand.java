@@ -38,5 +38,6 @@ public class FlagsCommand extends AbstractCommand {
         registerCommand(ClearSubCommand.class);
         registerCommand(ListSubCommand.class);
         registerCommand(SetSubCommand.class);
+        registerCommand(WhoSubCommand.class);
     }
 }
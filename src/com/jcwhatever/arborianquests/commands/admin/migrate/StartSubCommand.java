@@ -0,0 +1,90 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.commands.admin.migrate;
+
+import com.jcwhatever.arborianquests.ArborianQuests;
+import com.jcwhatever.arborianquests.Lang;
+import com.jcwhatever.arborianquests.quests.QuestManager;
+import com.jcwhatever.arborianquests.quests.progress.ProgressMigration;
+import com.jcwhatever.arborianquests.quests.progress.ProgressStorage;
+import com.jcwhatever.arborianquests.quests.progress.ProgressStorageMode;
+import com.jcwhatever.nucleus.managed.commands.CommandInfo;
+import com.jcwhatever.nucleus.managed.commands.arguments.ICommandArguments;
+import com.jcwhatever.nucleus.managed.commands.exceptions.CommandException;
+import com.jcwhatever.nucleus.managed.commands.mixins.IExecutableCommand;
+import com.jcwhatever.nucleus.managed.commands.utils.AbstractCommand;
+import com.jcwhatever.nucleus.managed.language.Localizable;
+
+import org.bukkit.command.CommandSender;
+
+@CommandInfo(
+        parent="migrate",
+        command = "start",
+        staticParams = { "mode" },
+        flags = { "restart" },
+        description = "Start or resume copying player progress from quest data files to another storage mode.",
+        paramDescriptions = {
+                "mode= The storage mode to migrate to. PLAYER, BINARY, JOURNAL or SQL.",
+                "restart= Discard the position of an interrupted migration and start over."
+        })
+
+public class StartSubCommand extends AbstractCommand implements IExecutableCommand {
+
+    @Localizable static final String _INVALID_MODE = "Cannot migrate to storage mode '{0}'.";
+    @Localizable static final String _CURRENT_MODE =
+            "Storage mode '{0}' is already in use. Select a different mode to migrate to.";
+    @Localizable static final String _ALREADY_RUNNING = "A migration is already running.";
+    @Localizable static final String _ALREADY_COMPLETE =
+            "Migration to '{0}' is already complete. Use the restart flag to run it again.";
+    @Localizable static final String _SUCCESS =
+            "Migration to '{0}' started. {1} of {2} quests already migrated.";
+
+    @Override
+    public void execute (CommandSender sender, ICommandArguments args) throws CommandException {
+
+        ProgressStorageMode mode = args.getEnum("mode", ProgressStorageMode.class);
+        boolean restart = args.getBoolean("restart");
+
+        if (mode == ProgressStorageMode.QUEST)
+            throw new CommandException(Lang.get(_INVALID_MODE, mode));
+
+        QuestManager manager = ArborianQuests.getQuestManager();
+        ProgressStorage storage = manager.getProgressStorage();
+
+        if (mode == storage.getMode())
+            throw new CommandException(Lang.get(_CURRENT_MODE, mode));
+
+        ProgressMigration current = storage.getMigration();
+        if (current != null && current.isRunning())
+            throw new CommandException(Lang.get(_ALREADY_RUNNING));
+
+        ProgressMigration migration = storage.migrate(manager.getCreatedQuests(), mode, restart);
+        if (migration.isComplete())
+            throw new CommandException(Lang.get(_ALREADY_COMPLETE, mode));
+
+        tellSuccess(sender, Lang.get(_SUCCESS, mode,
+                migration.getCompletedQuests(), migration.getTotalQuests()));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.commands.admin.migrate;
+
+import com.jcwhatever.arborianquests.ArborianQuests;
+import com.jcwhatever.arborianquests.Lang;
+import com.jcwhatever.arborianquests.quests.progress.ProgressMigration;
+import com.jcwhatever.nucleus.managed.commands.CommandInfo;
+import com.jcwhatever.nucleus.managed.commands.arguments.ICommandArguments;
+import com.jcwhatever.nucleus.managed.commands.exceptions.CommandException;
+import com.jcwhatever.nucleus.managed.commands.mixins.IExecutableCommand;
+import com.jcwhatever.nucleus.managed.commands.utils.AbstractCommand;
+import com.jcwhatever.nucleus.managed.language.Localizable;
+
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+
+@CommandInfo(
+        parent="migrate",
+        command = "status",
+        description = "Show the progress of the current player progress migration.")
+
+public class StatusSubCommand extends AbstractCommand implements IExecutableCommand {
+
+    @Localizable static final String _NOT_STARTED = "A migration has not been started.";
+    @Localizable static final String _STATE_RUNNING = "{GREEN}Running";
+    @Localizable static final String _STATE_STOPPED = "{RED}Stopped";
+    @Localizable static final String _STATE_COMPLETE = "{GREEN}Complete";
+    @Localizable static final String _STATUS = "{YELLOW}Migration to '{0}': {1}";
+    @Localizable static final String _QUESTS = "{GRAY}Quests: {WHITE}{0} of {1}";
+    @Localizable static final String _PLAYERS = "{GRAY}Players copied: {WHITE}{0}";
+    @Localizable static final String _CURRENT = "{GRAY}Current quest: {WHITE}{0} ({1} of {2} players)";
+    @Localizable static final String _FAILURES = "{GRAY}Checksum failures: {RED}{0}";
+    @Localizable static final String _FAILURE = "{RED} - {0}";
+
+    @Override
+    public void execute (CommandSender sender, ICommandArguments args) throws CommandException {
+
+        ProgressMigration migration = ArborianQuests.getQuestManager().getProgressStorage().getMigration();
+        if (migration == null)
+            throw new CommandException(Lang.get(_NOT_STARTED));
+
+        String state = migration.isComplete()
+                ? _STATE_COMPLETE
+                : migration.isRunning() ? _STATE_RUNNING : _STATE_STOPPED;
+
+        tell(sender, Lang.get(_STATUS, migration.getTarget(), Lang.get(state)));
+        tell(sender, Lang.get(_QUESTS, migration.getCompletedQuests(), migration.getTotalQuests()));
+        tell(sender, Lang.get(_PLAYERS, migration.getMigratedPlayers()));
+
+        String current = migration.getCurrentQuest();
+        if (current != null) {
+            tell(sender, Lang.get(_CURRENT, current,
+                    migration.getCurrentOffset(), migration.getCurrentSize()));
+        }
+
+        List<String> failures = migration.getFailures();
+        tell(sender, Lang.get(_FAILURES, failures.size()));
+
+        for (String failure : failures) {
+            tell(sender, Lang.get(_FAILURE, failure));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.commands.admin.migrate;
+
+import com.jcwhatever.arborianquests.ArborianQuests;
+import com.jcwhatever.arborianquests.Lang;
+import com.jcwhatever.arborianquests.quests.progress.ProgressMigration;
+import com.jcwhatever.nucleus.managed.commands.CommandInfo;
+import com.jcwhatever.nucleus.managed.commands.arguments.ICommandArguments;
+import com.jcwhatever.nucleus.managed.commands.exceptions.CommandException;
+import com.jcwhatever.nucleus.managed.commands.mixins.IExecutableCommand;
+import com.jcwhatever.nucleus.managed.commands.utils.AbstractCommand;
+import com.jcwhatever.nucleus.managed.language.Localizable;
+
+import org.bukkit.command.CommandSender;
+
+@CommandInfo(
+        parent="migrate",
+        command = "stop",
+        description = "Stop the current player progress migration. The migration can be resumed later.")
+
+public class StopSubCommand extends AbstractCommand implements IExecutableCommand {
+
+    @Localizable static final String _NOT_RUNNING = "A migration is not running.";
+    @Localizable static final String _SUCCESS = "Migration stopped after {0} players. Use the start command to resume.";
+
+    @Override
+    public void execute (CommandSender sender, ICommandArguments args) throws CommandException {
+
+        ProgressMigration migration = ArborianQuests.getQuestManager().getProgressStorage().getMigration();
+        if (migration == null || !migration.isRunning())
+            throw new CommandException(Lang.get(_NOT_RUNNING));
+
+        migration.stop();
+        tellSuccess(sender, Lang.get(_SUCCESS, migration.getMigratedPlayers()));
+    }
+}
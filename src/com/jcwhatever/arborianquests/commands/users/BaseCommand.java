@@ -26,19 +26,14 @@ package com.jcwhatever.arborianquests.commands.users;
 
 import com.jcwhatever.arborianquests.ArborianQuests;
 import com.jcwhatever.arborianquests.Lang;
-import com.jcwhatever.arborianquests.Msg;
 import com.jcwhatever.arborianquests.commands.admin.ListCommand;
+import com.jcwhatever.arborianquests.commands.admin.StatsCommand;
 import com.jcwhatever.arborianquests.commands.admin.flags.FlagsCommand;
 import com.jcwhatever.arborianquests.commands.admin.items.ItemsCommand;
 import com.jcwhatever.arborianquests.commands.admin.locations.LocationsCommand;
+import com.jcwhatever.arborianquests.commands.admin.migrate.MigrateCommand;
 import com.jcwhatever.arborianquests.commands.admin.regions.RegionsCommand;
 import com.jcwhatever.arborianquests.commands.admin.waypoints.WaypointsCommand;
-import com.jcwhatever.arborianquests.quests.PrimaryQuest;
-import com.jcwhatever.arborianquests.quests.Quest;
-import com.jcwhatever.arborianquests.quests.QuestStatus;
-import com.jcwhatever.arborianquests.quests.QuestStatus.CurrentQuestStatus;
-import com.jcwhatever.nucleus.collections.HierarchyNode;
-import com.jcwhatever.nucleus.collections.TreeNode;
 import com.jcwhatever.nucleus.managed.commands.CommandInfo;
 import com.jcwhatever.nucleus.managed.commands.arguments.ICommandArguments;
 import com.jcwhatever.nucleus.managed.commands.exceptions.CommandException;
@@ -46,19 +41,11 @@ import com.jcwhatever.nucleus.managed.commands.mixins.IExecutableCommand;
 import com.jcwhatever.nucleus.managed.commands.utils.AbstractCommand;
 import com.jcwhatever.nucleus.managed.language.Localizable;
 import com.jcwhatever.nucleus.managed.messaging.ChatPaginator;
-import com.jcwhatever.nucleus.managed.messaging.ChatTree;
-import com.jcwhatever.nucleus.managed.messaging.ChatTree.NodeLineWriter;
-import com.jcwhatever.nucleus.utils.text.TextUtils;
 import com.jcwhatever.nucleus.utils.text.TextUtils.FormatTemplate;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.permissions.PermissionDefault;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
-
 @CommandInfo(
         command={"quests"},
         staticParams = { "page=1" },
@@ -83,6 +70,8 @@ public class BaseCommand extends AbstractCommand implements IExecutableCommand {
         registerCommand(RegionsCommand.class);
         registerCommand(WaypointsCommand.class);
         registerCommand(ListCommand.class);
+        registerCommand(StatsCommand.class);
+        registerCommand(MigrateCommand.class);
     }
 
     @Override
@@ -95,58 +84,8 @@ public class BaseCommand extends AbstractCommand implements IExecutableCommand {
 
         ChatPaginator pagin = createPagin(args, 7, Lang.get(_PAGINATOR_TITLE));
 
-        Collection<Quest> quests = ArborianQuests.getQuestManager().getQuests();
-        List<HierarchyNode<Quest>> nodes = new ArrayList<>(quests.size());
-
-        for (Quest quest : quests) {
-
-            // make sure the player is in the quest
-            QuestStatus status = quest.getStatus(p);
-            if (status.getCurrentStatus() == CurrentQuestStatus.IN_PROGRESS) {
-
-                // check all sub nodes and remove quests the player is not in
-                HierarchyNode<Quest> node = new HierarchyNode<>(quest);
-                Iterator<TreeNode<Quest>> iterator = node.iterator();
-
-                while (iterator.hasNext()) {
-
-                    TreeNode<Quest> questNode = iterator.next();
-                    status = questNode.getValue().getStatus(p);
-
-                    Msg.debug(questNode.getValue().getDisplayName());
-
-                    if (status.getCurrentStatus() == CurrentQuestStatus.NONE) {
-                        iterator.remove();
-                    }
-                }
-
-                nodes.add(node);
-            }
-        }
-
-        // Create a chat hierarchy
-        ChatTree<Quest> questTree = new ChatTree<>(ArborianQuests.getPlugin());
-        questTree.addAllRootNodes(nodes);
-
-        // add chat hierarchy to paginator
-        pagin.addAll(questTree.toChatLines(new NodeLineWriter<Quest>() {
-            @Override
-            public String write(Quest quest) {
-
-                String line = quest instanceof PrimaryQuest
-                        ? TextUtils.format(FormatTemplate.LIST_ITEM_DESCRIPTION,
-                        quest.getDisplayName(), quest.getName()).toString()
-                        : TextUtils.format("{WHITE}{0}", quest.getName()).toString();
-
-                String objective = quest.getObjectives().getPlayerObjective(p.getUniqueId());
-
-                if (objective != null) {
-                    line += "{GRAY} - " + objective;
-                }
-
-                return line;
-            }
-        }));
+        // the view is only rendered again after the players quests change
+        pagin.addAll(ArborianQuests.getQuestManager().getPlayerViews().getLines(p.getUniqueId()));
 
         pagin.show(p, page, FormatTemplate.RAW);
 
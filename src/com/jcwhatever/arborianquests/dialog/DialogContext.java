@@ -41,37 +41,40 @@ import com.jcwhatever.nucleus.utils.PreCon;
 import com.jcwhatever.nucleus.utils.observer.script.IScriptUpdateSubscriber;
 import com.jcwhatever.nucleus.utils.observer.script.ScriptUpdateSubscriber;
 import com.jcwhatever.nucleus.utils.observer.update.NamedUpdateAgents;
-import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.UUID;
 
-/*
- * 
+/**
+ * Builds a dialog and runs it for any number of players at once.
+ *
+ * <p>Actions and formats are compiled into an immutable {@link DialogScript} the
+ * first time the dialog is started. Each player running the dialog has a
+ * {@link DialogCursor} that tracks their position in the script.</p>
  */
 public class DialogContext implements IDialogContext {
 
-    private static Set<DialogRunner> _runners = new HashSet<DialogRunner>(Bukkit.getMaxPlayers());
-    private static MasterDialogRunner _masterRunner;
+    // dialog cursors are scheduled on the wheel for the tick of their next action
+    private static final TimingWheel WHEEL = new TimingWheel(512);
+    private static boolean _isWheelRunning;
 
     private static final ActionBarOutput ACTION_BAR_OUTPUT = new ActionBarOutput();
     private static final ChatOutput CHAT_OUTPUT = new ChatOutput();
 
     private final List<IDialogAction> _actions = new ArrayList<>(20);
-    private final DialogRunner _dialogRunner = new DialogRunner();
+    private final Map<UUID, DialogCursor> _cursors = new HashMap<>(10);
     private final NamedUpdateAgents _agents = new NamedUpdateAgents();
     private final Settings _settings = new Settings();
 
     private String _npcName;
-    private Player _player;
     private IDialogOutput _output = ACTION_BAR_OUTPUT;
-    private int _currentIndex = 0;
-    private int _ticksLeft;
-    private int _padTicksLeft;
+    private DialogScript _script;
+    private DialogCursor _current;
     private boolean _isDisposed;
 
     private String _npcFormat;
@@ -79,9 +82,14 @@ public class DialogContext implements IDialogContext {
 
     public DialogContext() {
 
-        if (_masterRunner == null) {
-            _masterRunner = new MasterDialogRunner();
-            Scheduler.runTaskRepeat(ArborianQuests.getPlugin(), 1, 1, _masterRunner);
+        if (!_isWheelRunning) {
+            _isWheelRunning = true;
+            Scheduler.runTaskRepeat(ArborianQuests.getPlugin(), 1, 1, new Runnable() {
+                @Override
+                public void run() {
+                    WHEEL.tick();
+                }
+            });
         }
     }
 
@@ -136,7 +144,7 @@ public class DialogContext implements IDialogContext {
         PreCon.positiveNumber(readTicks);
         PreCon.notNull(dialog);
 
-        _actions.add(new NpcTalkAction(_npcName, _output, readTicks, dialog, args));
+        addAction(new NpcTalkAction(_npcName, _output, readTicks, dialog, args));
         return this;
     }
 
@@ -164,7 +172,7 @@ public class DialogContext implements IDialogContext {
         PreCon.positiveNumber(readTicks);
         PreCon.notNull(message);
 
-        _actions.add(new PlayerTalkAction(_output, readTicks, message, args));
+        addAction(new PlayerTalkAction(_output, readTicks, message, args));
         return this;
     }
 
@@ -183,13 +191,13 @@ public class DialogContext implements IDialogContext {
     public DialogContext pause(int ticks) {
         PreCon.positiveNumber(ticks);
 
-        _actions.add(new PauseAction(ticks));
+        addAction(new PauseAction(ticks));
         return this;
     }
 
     @Override
     public DialogContext pad(int ticks) {
-        _actions.add(new PadTimeAction(ticks));
+        addAction(new PadTimeAction(ticks));
         return this;
     }
 
@@ -197,7 +205,7 @@ public class DialogContext implements IDialogContext {
     public DialogContext run(Runnable runnable) {
         PreCon.notNull(runnable);
 
-        _actions.add(new RunnableAction(runnable));
+        addAction(new RunnableAction(runnable));
         return this;
     }
 
@@ -205,28 +213,63 @@ public class DialogContext implements IDialogContext {
     public DialogContext action(IDialogAction action) {
         PreCon.notNull(action);
 
-        _actions.add(action);
+        addAction(action);
         return this;
     }
 
+    @Nullable
+    @Override
+    public Player getPlayer() {
+        return _current != null ? _current.player : null;
+    }
+
+    @Override
+    public DialogScript compile() {
+
+        if (_script == null)
+            _script = new DialogScript(_actions, _npcFormat, _playerFormat);
+
+        return _script;
+    }
+
     @Override
     public void start(Player player) {
         PreCon.notNull(player);
 
-        _dialogRunner.cancel();
-        _player = player;
+        DialogCursor cursor = _cursors.get(player.getUniqueId());
+        if (cursor != null)
+            finish(cursor);
 
         IDialogContext current = DialogSessions.set(player, this);
-        if (current != null)
-            current.end();
+        if (current != null && current != this)
+            current.end(player);
+
+        cursor = new DialogCursor(this, compile(), player);
+        _cursors.put(player.getUniqueId(), cursor);
 
-        _dialogRunner.start();
+        WHEEL.schedule(cursor, 1);
+        update("onStart", cursor);
     }
 
     @Override
     public void end() {
-        _agents.update("onCancel", this);
-        _dialogRunner.cancel();
+
+        for (DialogCursor cursor : new ArrayList<>(_cursors.values())) {
+            update("onCancel", cursor);
+            finish(cursor);
+        }
+    }
+
+    @Override
+    public void end(Player player) {
+        PreCon.notNull(player);
+
+        DialogCursor cursor = _cursors.get(player.getUniqueId());
+        if (cursor == null)
+            return;
+
+        update("onCancel", cursor);
+        finish(cursor);
     }
 
     @Override
@@ -268,93 +311,99 @@ public class DialogContext implements IDialogContext {
 
         _isDisposed = true;
         _agents.disposeAgents();
-        _dialogRunner.cancel();
+
+        for (DialogCursor cursor : new ArrayList<>(_cursors.values())) {
+            finish(cursor);
+        }
     }
 
-    private class DialogRunner {
+    /*
+     * Invoked when a cursor is due to run its next action.
+     */
+    void next(DialogCursor cursor) {
 
-        boolean isCancelled;
+        if (_isDisposed) {
+            finish(cursor);
+            return;
+        }
 
-        void run() {
+        if (!cursor.player.isOnline()) {
+            end(cursor.player);
+            return;
+        }
 
-            if (_isDisposed) {
-                cancel();
-                return;
-            }
+        if (cursor.index >= cursor.script.size()) {
 
-            if (!_player.isOnline()) {
-                end();
-                return;
+            // wait for the pad time to run out
+            int padTicks = cursor.padEndTick - WHEEL.getTick();
+            if (padTicks > 0) {
+                WHEEL.schedule(cursor, padTicks);
             }
-
-            if (_padTicksLeft > 0)
-                _padTicksLeft--;
-
-            if (_ticksLeft > 0) {
-                _ticksLeft--;
-                return;
+            else {
+                finish(cursor);
             }
 
-            if (_currentIndex >= _actions.size()) {
-
-                if (_padTicksLeft <= 0)
-                    cancel();
-
-                return;
-            }
+            return;
+        }
 
-            IDialogAction action = _actions.get(_currentIndex);
-            _ticksLeft = action.duration();
+        IDialogAction action = cursor.script.getAction(cursor.index);
+        int duration = action.duration();
 
-            try {
-                action.run(_player, DialogContext.this);
-            }
-            catch (Throwable e) {
-                e.printStackTrace();
-            }
+        // settings used by the action apply to the cursor being run
+        DialogCursor previous = _current;
+        _current = cursor;
 
-            _currentIndex++;
+        try {
+            action.run(cursor.player, this);
+        }
+        catch (Throwable e) {
+            e.printStackTrace();
+        }
+        finally {
+            _current = previous;
         }
 
-        void cancel() {
+        cursor.index++;
 
-            this.isCancelled = true;
-            _runners.remove(this);
+        // the action may have ended or restarted the dialog
+        if (!cursor.isEnded && !cursor.isScheduled())
+            WHEEL.schedule(cursor, duration + 1);
+    }
 
-            if (_player != null) {
-                DialogSessions.remove(_player, DialogContext.this);
-                _agents.update("onComplete", DialogContext.this);
-            }
+    private void addAction(IDialogAction action) {
+        _actions.add(action);
+        _script = null;
+    }
 
-            _player = null;
-            _ticksLeft = 0;
-            _padTicksLeft = 0;
-            _currentIndex = 0;
-        }
+    // end a players dialog
+    private void finish(DialogCursor cursor) {
 
-        void start() {
-            this.isCancelled = false;
-            _runners.add(this);
-            _agents.update("onStart", this);
-        }
-    }
+        cursor.isEnded = true;
+        WHEEL.cancel(cursor);
 
-    private static class MasterDialogRunner implements Runnable {
+        UUID playerId = cursor.player.getUniqueId();
 
-        ArrayList<DialogRunner> runners = new ArrayList<>(50);
+        if (_cursors.get(playerId) != cursor)
+            return;
 
-        @Override
-        public void run() {
+        _cursors.remove(playerId);
+
+        DialogSessions.remove(cursor.player, this);
+        update("onComplete", cursor);
+    }
 
-            runners.ensureCapacity(_runners.size());
-            runners.addAll(_runners);
+    // notify subscribers of an event for a players dialog
+    private void update(String agentName, DialogCursor cursor) {
 
-            for (DialogRunner runner : runners) {
-                if (!runner.isCancelled)
-                    runner.run();
-            }
+        // subscribers get the player from the context
+        DialogCursor previous = _current;
+        _current = cursor;
 
-            runners.clear();
+        try {
+            _agents.update(agentName, this);
+        }
+        finally {
+            _current = previous;
         }
     }
 
@@ -362,36 +411,66 @@ public class DialogContext implements IDialogContext {
 
         @Override
         public int getPadTime() {
-            return _padTicksLeft;
+            return _current != null
+                    ? Math.max(0, _current.padEndTick - WHEEL.getTick())
+                    : 0;
         }
 
         @Override
         public int increasePadTime(int amount) {
-            return _padTicksLeft += amount;
+
+            if (_current == null)
+                return 0;
+
+            int padTicks = getPadTime() + amount;
+            _current.padEndTick = WHEEL.getTick() + padTicks;
+            return padTicks;
         }
 
         @Nullable
         @Override
         public String getNpcFormat() {
-            return _npcFormat;
+            return _current != null
+                    ? _current.script.getNpcFormat()
+                    : _npcFormat;
         }
 
         @Override
         public Settings setNpcFormat(@Nullable String format) {
             _npcFormat = format;
+            _script = null;
             return this;
         }
 
+        @Nullable
+        @Override
+        public DialogTemplate getNpcTemplate() {
+            return _current != null
+                    ? _current.script.getNpcTemplate()
+                    : compile().getNpcTemplate();
+        }
+
         @Nullable
         @Override
         public String getPlayerFormat() {
-            return _playerFormat;
+            return _current != null
+                    ? _current.script.getPlayerFormat()
+                    : _playerFormat;
         }
 
         @Override
         public Settings setPlayerFormat(@Nullable String format) {
             _playerFormat = format;
+            _script = null;
             return this;
         }
+
+        @Nullable
+        @Override
+        public DialogTemplate getPlayerTemplate() {
+            return _current != null
+                    ? _current.script.getPlayerTemplate()
+                    : compile().getPlayerTemplate();
+        }
     }
 }
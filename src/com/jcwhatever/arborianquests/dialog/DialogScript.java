@@ -0,0 +1,113 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.dialog;
+
+import com.jcwhatever.arborianquests.dialog.action.IDialogAction;
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.util.Collection;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable compiled dialog.
+ *
+ * <p>Holds the dialog actions and compiled message formats. A script is shared by every
+ * player running the dialog; each player only has a {@link DialogCursor} with
+ * their position in the script.</p>
+ */
+public final class DialogScript {
+
+    private final IDialogAction[] _actions;
+    private final String _npcFormat;
+    private final String _playerFormat;
+    private final DialogTemplate _npcTemplate;
+    private final DialogTemplate _playerTemplate;
+
+    /**
+     * Constructor.
+     *
+     * @param actions       The dialog actions.
+     * @param npcFormat     The npc message format.
+     * @param playerFormat  The player message format.
+     */
+    public DialogScript(Collection<IDialogAction> actions,
+                        @Nullable String npcFormat, @Nullable String playerFormat) {
+        PreCon.notNull(actions);
+
+        _actions = actions.toArray(new IDialogAction[actions.size()]);
+        _npcFormat = npcFormat;
+        _playerFormat = playerFormat;
+        _npcTemplate = npcFormat != null ? DialogTemplate.compile(npcFormat) : null;
+        _playerTemplate = playerFormat != null ? DialogTemplate.compile(playerFormat) : null;
+    }
+
+    /**
+     * Get the number of actions.
+     */
+    public int size() {
+        return _actions.length;
+    }
+
+    /**
+     * Get an action.
+     *
+     * @param index  The index of the action.
+     */
+    public IDialogAction getAction(int index) {
+        return _actions[index];
+    }
+
+    /**
+     * Get the npc message format.
+     */
+    @Nullable
+    public String getNpcFormat() {
+        return _npcFormat;
+    }
+
+    /**
+     * Get the compiled npc message format.
+     */
+    @Nullable
+    public DialogTemplate getNpcTemplate() {
+        return _npcTemplate;
+    }
+
+    /**
+     * Get the player message format.
+     */
+    @Nullable
+    public String getPlayerFormat() {
+        return _playerFormat;
+    }
+
+    /**
+     * Get the compiled player message format.
+     */
+    @Nullable
+    public DialogTemplate getPlayerTemplate() {
+        return _playerTemplate;
+    }
+}
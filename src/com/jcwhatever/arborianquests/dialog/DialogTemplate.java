@@ -0,0 +1,219 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.dialog;
+
+import com.jcwhatever.nucleus.utils.PreCon;
+import org.bukkit.ChatColor;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A message template compiled for fast rendering.
+ *
+ * <p>Color tags such as "{GRAY}" are resolved to color codes when the template is
+ * compiled and argument tags such as "{0}" become argument slots. Rendering is a
+ * single pass over the compiled segments into a reused builder.</p>
+ *
+ * <p>Rendering must only be done from the main thread.</p>
+ */
+public final class DialogTemplate {
+
+    private static final StringBuilder BUILDER = new StringBuilder(100);
+
+    // slot value of a literal segment
+    private static final int LITERAL = -1;
+
+    private final String[] _literals;
+    private final int[] _slots;
+
+    /**
+     * Compile a template.
+     *
+     * @param template  The template text.
+     */
+    public static DialogTemplate compile(String template) {
+        PreCon.notNull(template);
+
+        List<String> literals = new ArrayList<>(5);
+        List<Integer> slots = new ArrayList<>(5);
+        StringBuilder literal = new StringBuilder(template.length());
+
+        for (int i = 0; i < template.length(); i++) {
+
+            char ch = template.charAt(i);
+            int end = ch == '{' ? template.indexOf('}', i + 1) : -1;
+
+            if (end == -1) {
+                literal.append(ch);
+                continue;
+            }
+
+            String tag = template.substring(i + 1, end);
+            int slot = parseSlot(tag);
+
+            if (slot != LITERAL) {
+
+                if (literal.length() != 0) {
+                    literals.add(literal.toString());
+                    slots.add(LITERAL);
+                    literal.setLength(0);
+                }
+
+                literals.add(template.substring(i, end + 1));
+                slots.add(slot);
+            }
+            else {
+                ChatColor color = getColor(tag);
+                if (color != null) {
+                    literal.append(color.toString());
+                }
+                else {
+                    literal.append(template, i, end + 1);
+                }
+            }
+
+            i = end;
+        }
+
+        if (literal.length() != 0) {
+            literals.add(literal.toString());
+            slots.add(LITERAL);
+        }
+
+        int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++) {
+            slotArray[i] = slots.get(i);
+        }
+
+        return new DialogTemplate(literals.toArray(new String[literals.size()]), slotArray);
+    }
+
+    private DialogTemplate(String[] literals, int[] slots) {
+        _literals = literals;
+        _slots = slots;
+    }
+
+    /**
+     * Render the template.
+     *
+     * @param args  The template arguments.
+     */
+    public String render(Object... args) {
+        PreCon.notNull(args);
+
+        BUILDER.setLength(0);
+        appendTo(BUILDER, args);
+
+        return BUILDER.toString();
+    }
+
+    /**
+     * Render the template inside of a format template.
+     *
+     * <p>The first argument of the format is the specified name and the
+     * second argument is this template rendered with the specified arguments.</p>
+     *
+     * @param format  The format template. Null to render without a format.
+     * @param name    The first format argument.
+     * @param args    The template arguments.
+     */
+    public String render(@Nullable DialogTemplate format, Object name, Object[] args) {
+        PreCon.notNull(name);
+        PreCon.notNull(args);
+
+        if (format == null)
+            return render(args);
+
+        BUILDER.setLength(0);
+
+        for (int i = 0; i < format._slots.length; i++) {
+
+            switch (format._slots[i]) {
+                case 0:
+                    BUILDER.append(name);
+                    break;
+                case 1:
+                    appendTo(BUILDER, args);
+                    break;
+                default:
+                    BUILDER.append(format._literals[i]);
+                    break;
+            }
+        }
+
+        return BUILDER.toString();
+    }
+
+    private void appendTo(StringBuilder output, Object[] args) {
+
+        for (int i = 0; i < _slots.length; i++) {
+
+            int slot = _slots[i];
+
+            // missing arguments are left as the argument tag
+            if (slot == LITERAL || slot >= args.length) {
+                output.append(_literals[i]);
+            }
+            else {
+                output.append(args[slot]);
+            }
+        }
+    }
+
+    // get the argument index of a tag such as "0" or "0: description"
+    private static int parseSlot(String tag) {
+
+        int end = tag.indexOf(':');
+        if (end == -1)
+            end = tag.length();
+
+        if (end == 0 || end > 3)
+            return LITERAL;
+
+        int index = 0;
+        for (int i = 0; i < end; i++) {
+
+            char ch = tag.charAt(i);
+            if (ch < '0' || ch > '9')
+                return LITERAL;
+
+            index = index * 10 + (ch - '0');
+        }
+
+        return index;
+    }
+
+    @Nullable
+    private static ChatColor getColor(String tag) {
+        try {
+            return ChatColor.valueOf(tag);
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
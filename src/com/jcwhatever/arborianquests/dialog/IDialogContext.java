@@ -70,10 +70,39 @@ public interface IDialogContext extends IDisposable {
 
     IDialogContext action(IDialogAction action);
 
+    /**
+     * Get the player that the event or action currently being handled is for.
+     *
+     * <p>Used by onStart, onComplete and onCancel subscribers and by run actions
+     * to find the player since the dialog can run for many players at once.</p>
+     *
+     * @return  The player or null if not called from a subscriber or action.
+     */
+    @Nullable
+    Player getPlayer();
+
+    /**
+     * Compile the dialog into an immutable script. The script is
+     * shared by all players the dialog is started for.
+     */
+    DialogScript compile();
+
+    /**
+     * Start the dialog for a player. The dialog can run for
+     * multiple players at the same time.
+     */
     void start(Player player);
 
+    /**
+     * End the dialog for all players.
+     */
     void end();
 
+    /**
+     * End the dialog for a player.
+     */
+    void end(Player player);
+
     IDialogContext onStart(IScriptUpdateSubscriber<IDialogContext> subscriber);
 
     IDialogContext onComplete(IScriptUpdateSubscriber<IDialogContext> subscriber);
@@ -40,8 +40,14 @@ public interface IDialogContextSettings {
 
     IDialogContextSettings setNpcFormat(@Nullable String format);
 
+    @Nullable
+    DialogTemplate getNpcTemplate();
+
     @Nullable
     String getPlayerFormat();
 
     IDialogContextSettings setPlayerFormat(@Nullable String format);
+
+    @Nullable
+    DialogTemplate getPlayerTemplate();
 }
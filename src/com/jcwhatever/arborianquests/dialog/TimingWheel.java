@@ -0,0 +1,196 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.dialog;
+
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Hashed timing wheel that runs tasks on the tick they are due.
+ *
+ * Tasks are kept in intrusive linked lists, one per slot, so scheduling and
+ * cancelling do not allocate. Each tick only visits the tasks in the current
+ * slot instead of every scheduled task.
+ */
+final class TimingWheel {
+
+    // slot value of a task that is due and waiting to run during the current tick
+    private static final int DUE = -2;
+
+    private final Task[] _slots;
+    private final List<Task> _due = new ArrayList<>(50);
+    private final int _mask;
+
+    private int _tick;
+
+    /**
+     * Constructor.
+     *
+     * @param size  The number of slots. Must be a power of 2.
+     */
+    TimingWheel(int size) {
+        PreCon.greaterThanZero(size);
+        PreCon.isValid((size & (size - 1)) == 0, "Size must be a power of 2.");
+
+        _slots = new Task[size];
+        _mask = size - 1;
+    }
+
+    /**
+     * Get the current tick.
+     */
+    int getTick() {
+        return _tick;
+    }
+
+    /**
+     * Schedule a task. A task that is already scheduled is moved.
+     *
+     * @param task   The task.
+     * @param delay  The number of ticks until the task is run. Must be at least 1.
+     */
+    void schedule(Task task, int delay) {
+        PreCon.greaterThanZero(delay);
+
+        cancel(task);
+
+        task.dueTick = _tick + delay;
+        task.slot = task.dueTick & _mask;
+
+        Task head = _slots[task.slot];
+        task.next = head;
+        task.prev = null;
+
+        if (head != null)
+            head.prev = task;
+
+        _slots[task.slot] = task;
+    }
+
+    /**
+     * Remove a task from the wheel.
+     *
+     * @param task  The task.
+     */
+    void cancel(Task task) {
+
+        if (task.slot == -1)
+            return;
+
+        if (task.slot == DUE) {
+            task.slot = -1;
+            return;
+        }
+
+        unlink(task);
+    }
+
+    /**
+     * Advance the wheel by one tick and run the tasks that are due.
+     */
+    void tick() {
+
+        _tick++;
+
+        // collect due tasks first since running a task can cancel
+        // or reschedule other tasks in the same slot
+        Task task = _slots[_tick & _mask];
+
+        while (task != null) {
+
+            Task next = task.next;
+
+            if (task.dueTick - _tick <= 0) {
+                unlink(task);
+                task.slot = DUE;
+                _due.add(task);
+            }
+
+            task = next;
+        }
+
+        for (int i = 0; i < _due.size(); i++) {
+
+            task = _due.get(i);
+
+            // cancelled or rescheduled by a previous task
+            if (task.slot != DUE)
+                continue;
+
+            task.slot = -1;
+
+            try {
+                task.run();
+            }
+            catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+
+        _due.clear();
+    }
+
+    private void unlink(Task task) {
+
+        if (task.prev != null) {
+            task.prev.next = task.next;
+        }
+        else {
+            _slots[task.slot] = task.next;
+        }
+
+        if (task.next != null)
+            task.next.prev = task.prev;
+
+        task.prev = null;
+        task.next = null;
+        task.slot = -1;
+    }
+
+    /*
+     * A task that can be scheduled on a timing wheel.
+     */
+    static abstract class Task {
+
+        private Task prev;
+        private Task next;
+        private int dueTick;
+        private int slot = -1;
+
+        /**
+         * Determine if the task is scheduled.
+         */
+        boolean isScheduled() {
+            return slot != -1;
+        }
+
+        /**
+         * Invoked when the task is due.
+         */
+        abstract void run();
+    }
+}
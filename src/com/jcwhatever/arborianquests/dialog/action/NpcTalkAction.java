@@ -24,10 +24,10 @@
 
 package com.jcwhatever.arborianquests.dialog.action;
 
+import com.jcwhatever.arborianquests.dialog.DialogTemplate;
 import com.jcwhatever.arborianquests.dialog.IDialogContext;
 import com.jcwhatever.arborianquests.dialog.output.IDialogOutput;
 import com.jcwhatever.nucleus.utils.PreCon;
-import com.jcwhatever.nucleus.utils.text.TextUtils;
 import org.bukkit.entity.Player;
 
 /**
@@ -37,6 +37,7 @@ public class NpcTalkAction extends MessageAction {
 
     private final String _npcName;
     private final Object[] _args;
+    private final DialogTemplate _template;
 
     /**
      * Constructor.
@@ -54,17 +55,14 @@ public class NpcTalkAction extends MessageAction {
 
         _npcName = npcName;
         _args = args;
+        _template = DialogTemplate.compile(message);
     }
 
     @Override
     protected String getMessage(Player player, IDialogContext context) {
 
-        String message = TextUtils.format(super.getMessage(player, context), _args).toString();
-        String format = context.getSettings().getNpcFormat();
+        DialogTemplate format = context.getSettings().getNpcTemplate();
 
-        if (format != null && _npcName != null)
-            message = TextUtils.format(format, _npcName, message).toString();
-
-        return message;
+        return _template.render(format, _npcName, _args);
     }
 }
@@ -24,10 +24,10 @@
 
 package com.jcwhatever.arborianquests.dialog.action;
 
+import com.jcwhatever.arborianquests.dialog.DialogTemplate;
 import com.jcwhatever.arborianquests.dialog.IDialogContext;
 import com.jcwhatever.arborianquests.dialog.output.IDialogOutput;
 import com.jcwhatever.nucleus.utils.PreCon;
-import com.jcwhatever.nucleus.utils.text.TextUtils;
 import org.bukkit.entity.Player;
 
 /**
@@ -36,6 +36,7 @@ import org.bukkit.entity.Player;
 public class PlayerTalkAction extends MessageAction {
 
     private final Object[] _args;
+    private final DialogTemplate _template;
 
     /**
      * Constructor.
@@ -49,17 +50,14 @@ public class PlayerTalkAction extends MessageAction {
         PreCon.notNull(args);
 
         _args = args;
+        _template = DialogTemplate.compile(message);
     }
 
     @Override
     protected String getMessage(Player player, IDialogContext context) {
 
-        String message = TextUtils.format(super.getMessage(player, context), _args).toString();
-        String format = context.getSettings().getPlayerFormat();
+        DialogTemplate format = context.getSettings().getPlayerTemplate();
 
-        if (format != null && player != null)
-            message = TextUtils.format(format, player.getName(), message).toString();
-
-        return message;
+        return _template.render(format, player.getName(), _args);
     }
 }
@@ -24,9 +24,6 @@
 
 package com.jcwhatever.arborianquests.dialog.output;
 
-import com.jcwhatever.nucleus.managed.actionbar.ActionBarPriority;
-import com.jcwhatever.nucleus.managed.actionbar.ActionBars;
-import com.jcwhatever.nucleus.utils.TimeScale;
 import org.bukkit.entity.Player;
 
 /*
@@ -36,8 +33,6 @@ public class ActionBarOutput implements IDialogOutput {
 
     @Override
     public void say(Player player, int durationTicks, String message) {
-        durationTicks = durationTicks == 0 ? 1 : durationTicks;
-        ActionBars.createTimed(message, durationTicks, TimeScale.TICKS)
-                .showTo(player, ActionBarPriority.HIGH);
+        DialogOutputBuffer.actionBar(player, durationTicks, message);
     }
 }
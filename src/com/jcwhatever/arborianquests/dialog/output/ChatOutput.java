@@ -24,7 +24,6 @@
 
 package com.jcwhatever.arborianquests.dialog.output;
 
-import com.jcwhatever.arborianquests.Msg;
 import org.bukkit.entity.Player;
 
 /*
@@ -34,6 +33,6 @@ public class ChatOutput implements IDialogOutput {
 
     @Override
     public void say(Player player, int durationTicks, String message) {
-        Msg.tell(player, message);
+        DialogOutputBuffer.chat(player, message);
     }
 }
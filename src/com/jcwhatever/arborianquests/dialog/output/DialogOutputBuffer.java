@@ -0,0 +1,227 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.dialog.output;
+
+import com.jcwhatever.arborianquests.ArborianQuests;
+import com.jcwhatever.arborianquests.Msg;
+import com.jcwhatever.nucleus.managed.actionbar.ActionBarPriority;
+import com.jcwhatever.nucleus.managed.actionbar.ActionBars;
+import com.jcwhatever.nucleus.managed.actionbar.ITimedActionBar;
+import com.jcwhatever.nucleus.managed.scheduler.Scheduler;
+import com.jcwhatever.nucleus.utils.TimeScale;
+import com.jcwhatever.nucleus.utils.text.dynamic.IDynamicText;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Collects dialog output sent to players during a tick and sends it once per tick.
+ *
+ * <p>An action bar message replaces any action bar message sent to the same player
+ * earlier in the tick since only the last one would be visible. Chat lines are sent
+ * in order as a single message when the buffer is flushed.</p>
+ *
+ * <p>Each player keeps their buffer and action bar until they leave so that neither
+ * is recreated every tick.</p>
+ */
+public final class DialogOutputBuffer {
+
+    private DialogOutputBuffer() {}
+
+    private static final Map<UUID, PlayerBuffer> _buffers = new HashMap<>(50);
+    private static final List<PlayerBuffer> _pending = new ArrayList<>(50);
+    private static final StringBuilder _chat = new StringBuilder(256);
+
+    private static boolean _isRunning;
+
+    /**
+     * Queue an action bar message.
+     *
+     * @param player         The player.
+     * @param durationTicks  The duration to show the message for in ticks.
+     * @param message        The message.
+     */
+    public static void actionBar(Player player, int durationTicks, String message) {
+
+        PlayerBuffer buffer = getBuffer(player);
+
+        // superseded by the later message
+        buffer.actionBar = message;
+        buffer.actionBarTicks = durationTicks;
+    }
+
+    /**
+     * Queue a chat message.
+     *
+     * @param player   The player.
+     * @param message  The message.
+     */
+    public static void chat(Player player, String message) {
+        getBuffer(player).chat.add(message);
+    }
+
+    /**
+     * Send all queued output.
+     */
+    public static void flush() {
+
+        if (_pending.isEmpty())
+            return;
+
+        try {
+            // output sent while flushing is added to the end and sent in the same flush
+            for (int i = 0; i < _pending.size(); i++) {
+
+                PlayerBuffer buffer = _pending.get(i);
+
+                try {
+                    send(buffer);
+                }
+                catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        finally {
+
+            for (int i = 0; i < _pending.size(); i++) {
+                _pending.get(i).clear();
+            }
+
+            _pending.clear();
+        }
+    }
+
+    /**
+     * Remove a players buffer. Invoked when the player leaves.
+     *
+     * @param playerId  The ID of the player.
+     */
+    static void remove(UUID playerId) {
+        _buffers.remove(playerId);
+    }
+
+    // send a players queued output
+    private static void send(PlayerBuffer buffer) {
+
+        if (!buffer.player.isOnline())
+            return;
+
+        if (!buffer.chat.isEmpty()) {
+
+            // the messenger only prefixes the first line
+            String prefix = ArborianQuests.getPlugin().getChatPrefix();
+
+            _chat.setLength(0);
+
+            for (int i = 0; i < buffer.chat.size(); i++) {
+
+                if (i != 0)
+                    _chat.append('\n').append(prefix);
+
+                _chat.append(buffer.chat.get(i));
+            }
+
+            Msg.tell(buffer.player, _chat.toString());
+        }
+
+        if (buffer.actionBar != null) {
+
+            buffer.actionBarText.text = buffer.actionBar;
+
+            if (buffer.actionBarOutput == null)
+                buffer.actionBarOutput = ActionBars.createTimed(buffer.actionBarText, 1, TimeScale.TICKS);
+
+            buffer.actionBarOutput.showTo(buffer.player,
+                    Math.max(1, buffer.actionBarTicks), TimeScale.TICKS, ActionBarPriority.HIGH);
+        }
+    }
+
+    private static PlayerBuffer getBuffer(Player player) {
+
+        if (!_isRunning) {
+            _isRunning = true;
+            Scheduler.runTaskRepeat(ArborianQuests.getPlugin(), 1, 1, new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            });
+        }
+
+        PlayerBuffer buffer = _buffers.get(player.getUniqueId());
+        if (buffer == null) {
+            buffer = new PlayerBuffer();
+            _buffers.put(player.getUniqueId(), buffer);
+        }
+
+        if (!buffer.isPending) {
+            buffer.isPending = true;
+            buffer.player = player;
+            _pending.add(buffer);
+        }
+
+        return buffer;
+    }
+
+    private static class PlayerBuffer {
+        Player player;
+        boolean isPending;
+        String actionBar;
+        int actionBarTicks;
+        final List<String> chat = new ArrayList<>(5);
+
+        // the action bar may still be showing after a flush so it is kept
+        final ActionBarText actionBarText = new ActionBarText();
+        ITimedActionBar actionBarOutput;
+
+        void clear() {
+            isPending = false;
+            actionBar = null;
+            actionBarTicks = 0;
+            chat.clear();
+        }
+    }
+
+    // the text of a players reusable action bar
+    private static class ActionBarText implements IDynamicText {
+
+        String text = "";
+
+        @Override
+        public String nextText() {
+            return text;
+        }
+
+        @Override
+        public int getRefreshRate() {
+            return 20;
+        }
+    }
+}
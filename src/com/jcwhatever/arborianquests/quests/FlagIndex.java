@@ -0,0 +1,107 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests;
+
+import com.jcwhatever.arborianquests.quests.progress.IQuestProgressStore;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index of the players that have a flag set in a quest.
+ *
+ * <p>The players that have a flag are found using the progress store the first
+ * time the flag is queried. Afterwards the flags player set is kept up to date
+ * as the flag is set and cleared so that later queries do not need to scan
+ * the store.</p>
+ */
+class FlagIndex {
+
+    private final IQuestProgressStore _progress;
+    private final Map<String, Set<UUID>> _players = new ConcurrentHashMap<>(10);
+
+    /**
+     * Constructor.
+     *
+     * @param progress  The progress store of the indexed quest.
+     */
+    FlagIndex(IQuestProgressStore progress) {
+        _progress = progress;
+    }
+
+    /**
+     * Get the players that have a flag set.
+     *
+     * @param flagName  The name of the flag.
+     *
+     * @return  An unmodifiable set of player ID's.
+     */
+    Set<UUID> getPlayers(String flagName) {
+
+        Set<UUID> players = _players.get(flagName);
+        if (players == null) {
+
+            players = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>(25));
+            _progress.getPlayersWithFlag(flagName, players);
+
+            _players.put(flagName, players);
+        }
+
+        return Collections.unmodifiableSet(players);
+    }
+
+    /**
+     * Invoked when a flag is set on a player.
+     */
+    void onFlagSet(UUID playerId, String flagName) {
+
+        Set<UUID> players = _players.get(flagName);
+        if (players != null)
+            players.add(playerId);
+    }
+
+    /**
+     * Invoked when a flag is cleared from a player.
+     */
+    void onFlagCleared(UUID playerId, String flagName) {
+
+        Set<UUID> players = _players.get(flagName);
+        if (players != null)
+            players.remove(playerId);
+    }
+
+    /**
+     * Invoked when all of a players flags are cleared.
+     */
+    void onPlayerCleared(UUID playerId) {
+
+        for (Set<UUID> players : _players.values()) {
+            players.remove(playerId);
+        }
+    }
+}
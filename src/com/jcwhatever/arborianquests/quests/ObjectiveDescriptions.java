@@ -24,6 +24,9 @@
 
 package com.jcwhatever.arborianquests.quests;
 
+import com.jcwhatever.arborianquests.ArborianQuests;
+import com.jcwhatever.arborianquests.quests.events.QuestEventType;
+import com.jcwhatever.arborianquests.quests.progress.IQuestProgressStore;
 import com.jcwhatever.nucleus.storage.IDataNode;
 import com.jcwhatever.nucleus.utils.PreCon;
 
@@ -36,15 +39,18 @@ import javax.annotation.Nullable;
  */
 public class ObjectiveDescriptions {
 
+    private final Quest _quest;
     private final IDataNode _dataNode;
-    private final IDataNode _playerNodes;
+    private final IQuestProgressStore _progress;
 
-    public ObjectiveDescriptions(IDataNode dataNode, IDataNode playerNode) {
+    public ObjectiveDescriptions(Quest quest, IDataNode dataNode, IQuestProgressStore progress) {
+        PreCon.notNull(quest);
         PreCon.notNull(dataNode);
-        PreCon.notNull(playerNode);
+        PreCon.notNull(progress);
 
+        _quest = quest;
         _dataNode = dataNode;
-        _playerNodes = playerNode;
+        _progress = progress;
     }
 
     /**
@@ -56,7 +62,9 @@ public class ObjectiveDescriptions {
         PreCon.notNullOrEmpty(assignmentKey);
 
         _dataNode.remove(assignmentKey);
-        _dataNode.save();
+        ArborianQuests.getSaveQueue().markDirty(_dataNode);
+
+        _quest.getManager().getPlayerViews().invalidateAll();
     }
 
     /**
@@ -69,7 +77,9 @@ public class ObjectiveDescriptions {
         PreCon.notNullOrEmpty(assignmentKey);
 
         _dataNode.set(assignmentKey, text);
-        _dataNode.save();
+        ArborianQuests.getSaveQueue().markDirty(_dataNode);
+
+        _quest.getManager().getPlayerViews().invalidateAll();
     }
 
     /**
@@ -80,9 +90,12 @@ public class ObjectiveDescriptions {
     public void clearPlayerObjective(UUID playerId) {
         PreCon.notNull(playerId);
 
-        IDataNode node = _playerNodes.getNode(playerId.toString());
-        node.set("assignment", null);
-        node.save();
+        if (_progress.getObjective(playerId) == null)
+            return;
+
+        _progress.setObjective(playerId, null);
+        _quest.getManager().getPlayerViews().invalidate(playerId);
+        _quest.getManager().getEventBus().fire(QuestEventType.OBJECTIVE, _quest, playerId, null);
     }
 
     /**
@@ -98,7 +111,7 @@ public class ObjectiveDescriptions {
     public String getPlayerObjective(UUID playerId) {
         PreCon.notNull(playerId);
 
-        String assignmentKey = _playerNodes.getNode(playerId.toString()).getString("assignment");
+        String assignmentKey = _progress.getObjective(playerId);
         if (assignmentKey == null)
             return null;
 
@@ -120,16 +133,16 @@ public class ObjectiveDescriptions {
         PreCon.notNull(playerId);
         PreCon.notNullOrEmpty(assignmentKey);
 
-        if (!_playerNodes.hasNode(playerId.toString()))
+        if (!_progress.hasPlayer(playerId))
             return false;
 
-        IDataNode playerNode = _playerNodes.getNode(playerId.toString());
-        String currentKey = playerNode.getString("assignment");
+        String currentKey = _progress.getObjective(playerId);
         if (assignmentKey.equals(currentKey))
             return false;
 
-        _playerNodes.getNode(playerId.toString()).set("assignment", assignmentKey);
-        _playerNodes.save();
+        _progress.setObjective(playerId, assignmentKey);
+        _quest.getManager().getPlayerViews().invalidate(playerId);
+        _quest.getManager().getEventBus().fire(QuestEventType.OBJECTIVE, _quest, playerId, assignmentKey);
         return true;
     }
 
@@ -148,11 +161,10 @@ public class ObjectiveDescriptions {
         PreCon.notNullOrEmpty(assignmentKey);
         PreCon.notNull(assignmentText);
 
-        if (!_playerNodes.hasNode(playerId.toString()))
+        if (!_progress.hasPlayer(playerId))
             return false;
 
-        IDataNode playerNode = _playerNodes.getNode(playerId.toString());
-        String currentKey = playerNode.getString("assignment");
+        String currentKey = _progress.getObjective(playerId);
         if (assignmentKey.equals(currentKey))
             return false;
 
@@ -161,11 +173,12 @@ public class ObjectiveDescriptions {
 
         if (assignment == null) {
             assignments.set(assignmentKey, assignmentText);
-            assignments.save();
+            ArborianQuests.getSaveQueue().markDirty(assignments);
         }
 
-        playerNode.set("assignment", assignmentKey);
-        _playerNodes.save();
+        _progress.setObjective(playerId, assignmentKey);
+        _quest.getManager().getPlayerViews().invalidate(playerId);
+        _quest.getManager().getEventBus().fire(QuestEventType.OBJECTIVE, _quest, playerId, assignmentKey);
         return true;
     }
 }
@@ -0,0 +1,262 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.jcwhatever.arborianquests.Msg;
+import com.jcwhatever.arborianquests.quests.QuestStatus.CurrentQuestStatus;
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index of the quests each player is currently in.
+ *
+ * <p>The index is built at startup from a snapshot of the player statuses of every
+ * quest and sub quest. The snapshot is taken on the main thread, used to recount
+ * the quests {@link QuestStats}, and indexed in parallel. Afterwards the index is updated when a players status changes so that
+ * looking up a players quests never requires a scan.</p>
+ *
+ * <p>The players in each quest are also indexed so that removing a quest does
+ * not require a scan of all players.</p>
+ *
+ * <p>Lookups are safe from any thread.</p>
+ */
+public class PlayerQuestIndex {
+
+    private final ConcurrentHashMap<UUID, Set<Quest>> _index = new ConcurrentHashMap<>(100);
+    private final ConcurrentHashMap<Quest, Set<UUID>> _players = new ConcurrentHashMap<>(50);
+
+    /**
+     * Get the quests a player is currently in.
+     *
+     * @param playerId  The ID of the player.
+     *
+     * @return  An unmodifiable set of quests.
+     */
+    public Set<Quest> getQuests(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        Set<Quest> quests = _index.get(playerId);
+        if (quests == null)
+            return Collections.emptySet();
+
+        return Collections.unmodifiableSet(quests);
+    }
+
+    /**
+     * Add a quest to a players in progress quests.
+     *
+     * @param playerId  The ID of the player.
+     * @param quest     The quest.
+     */
+    public void add(UUID playerId, Quest quest) {
+        PreCon.notNull(playerId);
+        PreCon.notNull(quest);
+
+        Set<Quest> quests = _index.get(playerId);
+        if (quests == null) {
+            quests = Collections.newSetFromMap(new ConcurrentHashMap<Quest, Boolean>(5));
+
+            Set<Quest> current = _index.putIfAbsent(playerId, quests);
+            if (current != null)
+                quests = current;
+        }
+
+        Set<UUID> players = _players.get(quest);
+        if (players == null) {
+            players = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>(50));
+
+            Set<UUID> current = _players.putIfAbsent(quest, players);
+            if (current != null)
+                players = current;
+        }
+
+        quests.add(quest);
+        players.add(playerId);
+    }
+
+    /**
+     * Remove a quest from a players in progress quests.
+     *
+     * @param playerId  The ID of the player.
+     * @param quest     The quest.
+     */
+    public void remove(UUID playerId, Quest quest) {
+        PreCon.notNull(playerId);
+        PreCon.notNull(quest);
+
+        Set<Quest> quests = _index.get(playerId);
+        if (quests != null)
+            quests.remove(quest);
+
+        Set<UUID> players = _players.get(quest);
+        if (players != null)
+            players.remove(playerId);
+    }
+
+    /**
+     * Remove a quest and its sub quests from the index.
+     *
+     * @param quest  The quest.
+     */
+    public void removeQuest(Quest quest) {
+        PreCon.notNull(quest);
+
+        Set<UUID> players = _players.remove(quest);
+        if (players != null) {
+            for (UUID playerId : players) {
+
+                Set<Quest> quests = _index.get(playerId);
+                if (quests != null)
+                    quests.remove(quest);
+            }
+        }
+
+        for (Quest subQuest : quest.getQuests()) {
+            removeQuest(subQuest);
+        }
+    }
+
+    /**
+     * Build the index from the player statuses of the specified quests and
+     * their sub quests.
+     *
+     * <p>Must be invoked on the main thread. The statuses are read on the main
+     * thread and only the snapshot is indexed in parallel. Blocks until the
+     * index is built.</p>
+     *
+     * @param quests   The primary quests.
+     * @param threads  The number of threads to index with.
+     */
+    public void build(Collection<? extends Quest> quests, int threads) {
+        PreCon.notNull(quests);
+        PreCon.greaterThanZero(threads);
+
+        long start = System.nanoTime();
+
+        List<Quest> all = new ArrayList<>(quests.size() * 2);
+        for (Quest quest : quests) {
+            addQuests(quest, all);
+        }
+
+        // progress stores and data nodes are not thread safe
+        List<QuestSnapshot> snapshots = new ArrayList<>(all.size());
+        for (Quest quest : all) {
+            try {
+                QuestSnapshot snapshot = new QuestSnapshot(quest);
+
+                // the statuses are already read so the stats are recounted here
+                quest.getStats().count(snapshot.statuses);
+
+                snapshots.add(snapshot);
+            }
+            catch (RuntimeException e) {
+                Msg.severe("Failed to index players in quest: {0}", quest.getPathName());
+                e.printStackTrace();
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>(snapshots.size());
+
+        for (final QuestSnapshot snapshot : snapshots) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    index(snapshot);
+                }
+            }));
+        }
+
+        executor.shutdown();
+
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                Uninterruptibles.getUninterruptibly(futures.get(i));
+            }
+            catch (ExecutionException e) {
+                Msg.severe("Failed to index players in quest: {0}",
+                        snapshots.get(i).quest.getPathName());
+                e.getCause().printStackTrace();
+            }
+        }
+
+        Msg.info("Indexed {0} players in {1} quests in {2}ms.", _index.size(), all.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // add the in progress players of a quest snapshot to the index
+    private void index(QuestSnapshot snapshot) {
+
+        for (int i = 0; i < snapshot.players.length; i++) {
+            if (snapshot.statuses[i].getCurrentStatus() == CurrentQuestStatus.IN_PROGRESS)
+                add(snapshot.players[i], snapshot.quest);
+        }
+    }
+
+    private static void addQuests(Quest quest, List<Quest> output) {
+        output.add(quest);
+
+        for (Quest subQuest : quest.getQuests()) {
+            addQuests(subQuest, output);
+        }
+    }
+
+    /*
+     * Immutable snapshot of the player statuses in a quest.
+     */
+    private static class QuestSnapshot {
+
+        final Quest quest;
+        final UUID[] players;
+        final QuestStatus[] statuses;
+
+        // invoked on the main thread
+        QuestSnapshot(Quest quest) {
+            this.quest = quest;
+
+            List<UUID> players = quest.getProgress().getPlayers(new ArrayList<UUID>(50));
+
+            this.players = players.toArray(new UUID[players.size()]);
+            this.statuses = new QuestStatus[this.players.length];
+
+            for (int i = 0; i < this.players.length; i++) {
+                this.statuses[i] = quest.getStatus(this.players[i]);
+            }
+        }
+    }
+}
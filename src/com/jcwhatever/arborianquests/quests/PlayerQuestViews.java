@@ -0,0 +1,182 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests;
+
+import com.jcwhatever.arborianquests.quests.QuestStatus.CurrentQuestStatus;
+import com.jcwhatever.nucleus.collections.HierarchyNode;
+import com.jcwhatever.nucleus.collections.TreeNode;
+import com.jcwhatever.nucleus.managed.messaging.ChatTree;
+import com.jcwhatever.nucleus.managed.messaging.ChatTree.NodeLineWriter;
+import com.jcwhatever.nucleus.utils.PreCon;
+import com.jcwhatever.nucleus.utils.observer.update.UpdateSubscriber;
+import com.jcwhatever.nucleus.utils.text.TextUtils;
+import com.jcwhatever.nucleus.utils.text.TextUtils.FormatTemplate;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Per-player views of the quests a player is currently in.
+ *
+ * <p>A players view is rendered into chat lines the first time it is requested
+ * and kept until the players status or objective in one of the quests changes.
+ * Quests are found using the {@link PlayerQuestIndex} so rendering does not
+ * check every quest.</p>
+ *
+ * <p>Views are dropped when the player leaves the server.</p>
+ */
+public class PlayerQuestViews implements Listener {
+
+    private final QuestManager _manager;
+    private final Map<UUID, List<String>> _views = new HashMap<>(50);
+
+    /**
+     * Constructor.
+     *
+     * @param manager  The owning quest manager.
+     */
+    public PlayerQuestViews(QuestManager manager) {
+        PreCon.notNull(manager);
+
+        _manager = manager;
+
+        UpdateSubscriber<Quest> invalidator = new UpdateSubscriber<Quest>() {
+            @Override
+            public void on(Quest quest) {
+                invalidateAll();
+            }
+        };
+
+        manager.onQuestCreate(invalidator);
+        manager.onQuestRemove(invalidator);
+    }
+
+    /**
+     * Get the rendered chat lines of a players view.
+     *
+     * @param playerId  The ID of the player.
+     *
+     * @return  An unmodifiable list of lines.
+     */
+    public List<String> getLines(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        List<String> lines = _views.get(playerId);
+        if (lines == null) {
+            lines = Collections.unmodifiableList(render(playerId));
+            _views.put(playerId, lines);
+        }
+
+        return lines;
+    }
+
+    /**
+     * Invalidate a players view so that it is rendered again
+     * the next time it is requested.
+     *
+     * @param playerId  The ID of the player.
+     */
+    public void invalidate(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        _views.remove(playerId);
+    }
+
+    /**
+     * Invalidate the views of all players.
+     */
+    public void invalidateAll() {
+        _views.clear();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    private void onPlayerQuit(PlayerQuitEvent event) {
+        _views.remove(event.getPlayer().getUniqueId());
+    }
+
+    private List<String> render(final UUID playerId) {
+
+        Set<Quest> quests = _manager.getPlayerIndex().getQuests(playerId);
+        List<HierarchyNode<Quest>> nodes = new ArrayList<>(quests.size());
+
+        for (Quest quest : quests) {
+
+            // only primary quests created during the session are shown
+            if (!(quest instanceof PrimaryQuest) || _manager.getQuest(quest.getPath()) != quest)
+                continue;
+
+            // remove sub quests the player is not in
+            HierarchyNode<Quest> node = new HierarchyNode<>(quest);
+            Iterator<TreeNode<Quest>> iterator = node.iterator();
+
+            while (iterator.hasNext()) {
+
+                TreeNode<Quest> questNode = iterator.next();
+                QuestStatus status = questNode.getValue().getStatus(playerId);
+
+                if (status.getCurrentStatus() == CurrentQuestStatus.NONE) {
+                    iterator.remove();
+                }
+            }
+
+            nodes.add(node);
+        }
+
+        if (nodes.isEmpty())
+            return new ArrayList<>(0);
+
+        ChatTree<Quest> questTree = new ChatTree<>(_manager.getPlugin());
+        questTree.addAllRootNodes(nodes);
+
+        return questTree.toChatLines(new NodeLineWriter<Quest>() {
+            @Override
+            public String write(Quest quest) {
+
+                String line = quest instanceof PrimaryQuest
+                        ? TextUtils.format(FormatTemplate.LIST_ITEM_DESCRIPTION,
+                        quest.getDisplayName(), quest.getName()).toString()
+                        : TextUtils.format("{WHITE}{0}", quest.getName()).toString();
+
+                String objective = quest.getObjectives().getPlayerObjective(playerId);
+
+                if (objective != null) {
+                    line += "{GRAY} - " + objective;
+                }
+
+                return line;
+            }
+        });
+    }
+}
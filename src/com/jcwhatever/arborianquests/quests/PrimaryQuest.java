@@ -34,8 +34,8 @@ import javax.annotation.Nullable;
  */
 public class PrimaryQuest extends Quest {
 
-    public PrimaryQuest(String questName, String displayName, IDataNode dataNode) {
-        super(questName, displayName, dataNode);
+    public PrimaryQuest(QuestManager manager, String questName, String displayName, IDataNode dataNode) {
+        super(manager, questName, displayName, dataNode);
     }
 
     /**
@@ -56,4 +56,9 @@ public class PrimaryQuest extends Quest {
     public Collection<Quest> getChildren() {
         return getQuests();
     }
+
+    @Override
+    protected QuestPath createPath() {
+        return QuestPath.of(getName());
+    }
 }
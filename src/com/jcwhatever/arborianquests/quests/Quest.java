@@ -24,22 +24,22 @@
 
 package com.jcwhatever.arborianquests.quests;
 
-import com.google.common.collect.Multimap;
-import com.google.common.collect.MultimapBuilder;
 import com.jcwhatever.arborianquests.ArborianQuests;
 import com.jcwhatever.arborianquests.quests.QuestStatus.CurrentQuestStatus;
+import com.jcwhatever.arborianquests.quests.events.QuestEventBus;
+import com.jcwhatever.arborianquests.quests.events.QuestEventType;
+import com.jcwhatever.arborianquests.quests.progress.IQuestProgressStore;
 import com.jcwhatever.nucleus.mixins.IHierarchyNode;
 import com.jcwhatever.nucleus.mixins.INamed;
 import com.jcwhatever.nucleus.storage.IDataNode;
-import com.jcwhatever.nucleus.utils.CollectionUtils;
 import com.jcwhatever.nucleus.utils.PreCon;
-import com.jcwhatever.nucleus.utils.text.TextUtils;
 
 import org.bukkit.entity.Player;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -51,16 +51,17 @@ import javax.annotation.Nullable;
  */
 public abstract class Quest implements INamed, IHierarchyNode<Quest> {
 
-    private static Multimap<UUID, Quest> _playerQuests =
-            MultimapBuilder.hashKeys(100).hashSetValues().build();
-
+    private final QuestManager _manager;
     private final String _questName;
     private String _displayName;
     private final IDataNode _dataNode;
-    private final IDataNode _playerNodes;
     private final IDataNode _questNodes;
+    private final IQuestProgressStore _progress;
     private final ObjectiveDescriptions _objectives;
+    @Nullable private final FlagIndex _flagIndex;
+    private final QuestStats _stats;
     private final Map<String, Quest> _subQuests = new HashMap<>(5);
+    private QuestPath _path;
 
     /**
      * Get an unmodifiable {@link java.util.Set} of {@link Quest}'s that
@@ -69,7 +70,9 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
      * @param player  The player.
      */
     public static Set<Quest> getPlayerQuests(Player player) {
-        return CollectionUtils.unmodifiableSet(_playerQuests.get(player.getUniqueId()));
+        PreCon.notNull(player, "player");
+
+        return ArborianQuests.getQuestManager().getPlayerIndex().getQuests(player.getUniqueId());
     }
 
     /**
@@ -89,21 +92,33 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
     /**
      * Constructor.
      *
+     * @param manager      The owning quest manager.
      * @param questName    The name of the quest.
      * @param displayName  The quest display name.
      * @param dataNode     The quest data node.
      */
-    public Quest(String questName, String displayName, IDataNode dataNode) {
+    public Quest(QuestManager manager, String questName, String displayName, IDataNode dataNode) {
+        PreCon.notNull(manager);
         PreCon.notNullOrEmpty(questName);
         PreCon.notNullOrEmpty(displayName);
         PreCon.notNull(dataNode);
 
+        _manager = manager;
         _questName = questName;
         _displayName = displayName;
         _dataNode = dataNode;
-        _playerNodes = dataNode.getNode("players");
         _questNodes = dataNode.getNode("quests");
-        _objectives = new ObjectiveDescriptions(dataNode.getNode("objectives"), _playerNodes);
+        _progress = manager.getProgressStorage().createStore(this);
+        _objectives = new ObjectiveDescriptions(this, dataNode.getNode("objectives"), _progress);
+        _flagIndex = manager.getProgressStorage().isFlagIndexed() ? new FlagIndex(_progress) : null;
+        _stats = new QuestStats(this);
+    }
+
+    /**
+     * Get the quest manager that owns the quest.
+     */
+    public QuestManager getManager() {
+        return _manager;
     }
 
     /**
@@ -114,8 +129,21 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
         return _questName;
     }
 
+    /**
+     * Get the quests interned path.
+     */
+    public QuestPath getPath() {
+        if (_path == null)
+            _path = createPath();
+
+        return _path;
+    }
+
+    /**
+     * Get the quests full dotted path.
+     */
     public String getPathName() {
-        return _questName;
+        return getPath().getPathName();
     }
 
     /**
@@ -132,6 +160,21 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
      */
     public void setDisplayName(String displayName) {
         _displayName = displayName;
+        _manager.onQuestRenamed();
+    }
+
+    /**
+     * Get the quests data node.
+     */
+    public IDataNode getDataNode() {
+        return _dataNode;
+    }
+
+    /**
+     * Get the quests player progress store.
+     */
+    public IQuestProgressStore getProgress() {
+        return _progress;
     }
 
     /**
@@ -141,6 +184,13 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
         return _objectives;
     }
 
+    /**
+     * Get the quests player statistics.
+     */
+    public QuestStats getStats() {
+        return _stats;
+    }
+
     /**
      * Get a sub quest of the quest by name.
      *
@@ -150,7 +200,7 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
     public Quest getQuest(String questName) {
         PreCon.notNullOrEmpty(questName);
 
-        return _subQuests.get(questName.toLowerCase());
+        return _subQuests.get(QuestPath.toLowerCase(questName));
     }
 
     /**
@@ -170,7 +220,7 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
         PreCon.notNullOrEmpty(questName);
         PreCon.notNullOrEmpty(displayName);
 
-        questName = questName.toLowerCase();
+        questName = QuestPath.toLowerCase(questName);
 
         Quest quest = _subQuests.get(questName);
         if (quest != null) {
@@ -182,9 +232,10 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
 
         quest = new SubQuest(this, questName, displayName, node);
         node.set("display", displayName);
-        node.save();
+        ArborianQuests.getSaveQueue().markDirty(node);
 
         _subQuests.put(questName, quest);
+        _manager.onQuestCreated(quest);
 
         return quest;
     }
@@ -199,7 +250,7 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
     public boolean removeQuest(String questName) {
         PreCon.notNullOrEmpty(questName);
 
-        questName = questName.toLowerCase();
+        questName = QuestPath.toLowerCase(questName);
 
         Quest quest = _subQuests.remove(questName);
         if (quest == null)
@@ -207,7 +258,9 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
 
         IDataNode node = _dataNode.getNode("quests." + questName);
         node.remove();
-        node.save();
+        ArborianQuests.getSaveQueue().markDirty(_dataNode);
+
+        _manager.onQuestRemoved(quest);
 
         return true;
     }
@@ -228,8 +281,7 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
      * @param playerId  The id of the player to check.
      */
     public QuestStatus getStatus(UUID playerId) {
-        //noinspection ConstantConditions
-        return _playerNodes.getEnum(playerId.toString() + ".status", QuestStatus.NONE, QuestStatus.class);
+        return _progress.getStatus(playerId);
     }
 
     /**
@@ -253,10 +305,12 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
         switch (status) {
             case NONE:
                 setStatus(playerId, QuestStatus.INCOMPLETE);
+                _manager.getEventBus().fire(QuestEventType.ACCEPT, this, playerId, null);
                 break;
 
             case COMPLETED:
                 setStatus(playerId, QuestStatus.RERUN);
+                _manager.getEventBus().fire(QuestEventType.ACCEPT, this, playerId, null);
                 break;
 
             case INCOMPLETE:
@@ -290,6 +344,7 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
                 // fall through
             case INCOMPLETE:
                 setStatus(playerId, QuestStatus.COMPLETED);
+                _manager.getEventBus().fire(QuestEventType.FINISH, this, playerId, null);
                 break;
 
             case NONE:
@@ -319,14 +374,20 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
 
         switch (status) {
             case RERUN:
-                // fall through
+                setStatus(playerId, QuestStatus.COMPLETED);
+                _manager.getEventBus().fire(QuestEventType.CANCEL, this, playerId, null);
+                break;
+
             case COMPLETED:
                 setStatus(playerId, QuestStatus.COMPLETED);
                 break;
 
-            case NONE:
-                // fall through
             case INCOMPLETE:
+                setStatus(playerId, QuestStatus.NONE);
+                _manager.getEventBus().fire(QuestEventType.CANCEL, this, playerId, null);
+                break;
+
+            case NONE:
                 setStatus(playerId, QuestStatus.NONE);
                 break;
         }
@@ -344,7 +405,7 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
         PreCon.notNull(playerId);
         PreCon.notNullOrEmpty(flagName);
 
-        return _playerNodes.getBoolean(playerId.toString() + ".flags." + flagName, false);
+        return _progress.hasFlag(playerId, flagName);
     }
 
     /**
@@ -357,8 +418,17 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
         PreCon.notNull(playerId);
         PreCon.notNullOrEmpty(flagName);
 
-        _playerNodes.set(playerId.toString() + ".flags." + flagName, true);
-        _playerNodes.save();
+        // only fire when the flag changes, checked only if there are handlers
+        boolean isEvent = _manager.getEventBus().hasHandlers(this, QuestEventType.FLAG_SET)
+                && !_progress.hasFlag(playerId, flagName);
+
+        _progress.setFlag(playerId, flagName);
+
+        if (_flagIndex != null)
+            _flagIndex.onFlagSet(playerId, flagName);
+
+        if (isEvent)
+            _manager.getEventBus().fire(QuestEventType.FLAG_SET, this, playerId, flagName);
     }
 
     /**
@@ -371,26 +441,56 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
         PreCon.notNull(playerId);
         PreCon.notNullOrEmpty(flagName);
 
-        _playerNodes.remove(playerId.toString() + ".flags." + flagName);
-        _playerNodes.save();
+        boolean isEvent = _manager.getEventBus().hasHandlers(this, QuestEventType.FLAG_CLEAR)
+                && _progress.hasFlag(playerId, flagName);
+
+        _progress.clearFlag(playerId, flagName);
+
+        if (_flagIndex != null)
+            _flagIndex.onFlagCleared(playerId, flagName);
+
+        if (isEvent)
+            _manager.getEventBus().fire(QuestEventType.FLAG_CLEAR, this, playerId, flagName);
     }
 
     /**
      * Clear all flags set on a player.
      *
+     * <p>The quest is cancelled and the rest of the players progress in the
+     * quest and its sub quests is removed.</p>
+     *
      * @param playerId  The ID of the player.
      */
     public void clearFlags(final UUID playerId) {
         PreCon.notNull(playerId);
 
+        QuestEventBus eventBus = _manager.getEventBus();
+
+        // flags are only collected if there are handlers to notify
+        List<String> flags = eventBus.hasHandlers(this, QuestEventType.FLAG_CLEAR)
+                ? _progress.getFlags(playerId, new ArrayList<String>(10))
+                : null;
+
+        QuestStatus status = getStatus(playerId);
+
         cancel(playerId);
 
-        _playerNodes.remove(playerId.toString());
-        _playerNodes.save();
+        // Removes the rest of the players progress, including a completed status,
+        // so the change is counted in the quests statistics.
+        setStatus(playerId, QuestStatus.NONE);
+
+        // cancelling does not change a completed status
+        if (status == QuestStatus.COMPLETED)
+            eventBus.fire(QuestEventType.CANCEL, this, playerId, null);
+
+        if (flags != null) {
+            for (String flagName : flags) {
+                eventBus.fire(QuestEventType.FLAG_CLEAR, this, playerId, flagName);
+            }
+        }
 
         for (Quest quest : _subQuests.values()) {
             quest.clearFlags(playerId);
-            quest.setStatus(playerId, QuestStatus.NONE);
         }
     }
 
@@ -402,9 +502,7 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
     public Collection<String> getFlags(UUID playerId) {
         PreCon.notNull(playerId);
 
-        IDataNode flagNode = _playerNodes.getNode(playerId.toString() + ".flags");
-
-        return flagNode.getSubNodeNames();
+        return _progress.getFlags(playerId, new ArrayList<String>(10));
     }
 
     /**
@@ -416,49 +514,85 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
         PreCon.notNull(playerId);
         PreCon.notNull(output);
 
-        IDataNode flagNode = _playerNodes.getNode(playerId.toString() + ".flags");
+        return _progress.getFlags(playerId, output);
+    }
+
+    /**
+     * Get the ID's of the players that have a flag set.
+     *
+     * <p>If the "flag-index" setting is enabled, the players are looked up
+     * in the quests flag index. Otherwise the progress store is scanned.</p>
+     *
+     * @param flagName  The name of the flag.
+     * @param output    The output collection to add the player ID's to.
+     *
+     * @return  The output collection.
+     */
+    public <T extends Collection<UUID>> T getPlayersWithFlag(String flagName, T output) {
+        PreCon.notNullOrEmpty(flagName);
+        PreCon.notNull(output);
+
+        if (_flagIndex == null)
+            return _progress.getPlayersWithFlag(flagName, output);
+
+        output.addAll(_flagIndex.getPlayers(flagName));
+        return output;
+    }
+
+    /**
+     * Get an iterator over the ID's of players that may have a flag set.
+     *
+     * <p>If the "flag-index" setting is enabled, only the players in the quests flag
+     * index are returned. Otherwise all players with progress in the quest are returned
+     * and the caller must check the flag.</p>
+     *
+     * <p>The players are not copied. The iterator is weakly consistent and can be
+     * used across ticks while progress changes.</p>
+     *
+     * @param flagName  The name of the flag.
+     */
+    public Iterator<UUID> getFlagCandidates(String flagName) {
+        PreCon.notNullOrEmpty(flagName);
+
+        if (_flagIndex == null)
+            return _progress.getPlayerIterator();
 
-        return flagNode.getSubNodeNames(output);
+        return _flagIndex.getPlayers(flagName).iterator();
     }
 
+    /**
+     * Create the quests path. Invoked the first time the path is needed.
+     */
+    protected abstract QuestPath createPath();
+
     // Set the quest status of a player
     private void setStatus(UUID playerId, QuestStatus status) {
 
-        if (status == QuestStatus.NONE) {
-            _playerNodes.remove(playerId.toString());
-        }
-        else {
-            _playerNodes.set(playerId.toString() + ".status", status);
-        }
+        QuestStatus previous = _progress.getStatus(playerId);
+
+        _progress.setStatus(playerId, status);
+        _stats.onStatusChanged(playerId, previous, status);
+
+        // stores remove all of a players progress when the status is NONE
+        if (status == QuestStatus.NONE && _flagIndex != null)
+            _flagIndex.onPlayerCleared(playerId);
 
         if (status.getCurrentStatus() == CurrentQuestStatus.NONE) {
-            _playerQuests.remove(playerId, this);
+            _manager.getPlayerIndex().remove(playerId, this);
         }
         else if (status.getCurrentStatus() == CurrentQuestStatus.IN_PROGRESS) {
-            _playerQuests.put(playerId, this);
+            _manager.getPlayerIndex().add(playerId, this);
         }
 
-        _playerNodes.save();
+        _manager.getPlayerViews().invalidate(playerId);
     }
 
-    // initial settings load
-    private void loadSettings() {
-
-        // load players
-        for (IDataNode playerNode : _playerNodes) {
-            UUID id = TextUtils.parseUUID(playerNode.getName());
-            if (id == null)
-                continue;
-
-            QuestStatus status = playerNode.getEnum("", QuestStatus.NONE, QuestStatus.class);
-            //noinspection ConstantConditions
-            if (status.getCurrentStatus() != CurrentQuestStatus.IN_PROGRESS)
-                continue;
-
-            _playerQuests.put(id, this);
-        }
+    /*
+     * Load saved sub quests. Invoked by the quest manager after
+     * a saved quest is loaded.
+     */
+    void loadQuests() {
 
-        // load sub quests
         for (IDataNode questNode : _questNodes) {
 
             String questName = questNode.getName();
@@ -471,7 +605,9 @@ public abstract class Quest implements INamed, IHierarchyNode<Quest> {
 
             SubQuest quest = new SubQuest(this, questName, displayName, questNode);
 
-            _subQuests.put(questName.toLowerCase(), quest);
+            _subQuests.put(QuestPath.toLowerCase(questName), quest);
+
+            quest.loadQuests();
         }
     }
 }
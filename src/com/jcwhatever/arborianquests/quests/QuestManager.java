@@ -25,20 +25,28 @@
 package com.jcwhatever.arborianquests.quests;
 
 import com.jcwhatever.arborianquests.ArborianQuests;
+import com.jcwhatever.arborianquests.quests.events.QuestEventBus;
+import com.jcwhatever.arborianquests.quests.progress.ProgressStorage;
+import com.jcwhatever.arborianquests.quests.query.IProgressFilter;
+import com.jcwhatever.arborianquests.quests.query.ProgressQuery;
+import com.jcwhatever.arborianquests.storage.ParallelLoader;
 import com.jcwhatever.nucleus.mixins.IPluginOwned;
 import com.jcwhatever.nucleus.storage.DataPath;
 import com.jcwhatever.nucleus.providers.storage.DataStorage;
 import com.jcwhatever.nucleus.storage.IDataNode;
 import com.jcwhatever.nucleus.utils.PreCon;
-import com.jcwhatever.nucleus.utils.text.TextUtils;
+import com.jcwhatever.nucleus.utils.observer.update.IUpdateSubscriber;
+import com.jcwhatever.nucleus.utils.observer.update.NamedUpdateAgents;
 
 import org.bukkit.plugin.Plugin;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import javax.annotation.Nullable;
 
 /**
@@ -48,23 +56,43 @@ public class QuestManager implements IPluginOwned {
 
     private final Plugin _plugin;
     private final IDataNode _dataNode;
+    private final IDataNode _statsNode;
+    private final ProgressStorage _progressStorage;
+    private final PlayerQuestIndex _playerIndex = new PlayerQuestIndex();
+    private final QuestPathTrie _paths = new QuestPathTrie();
+    private final NamedUpdateAgents _agents = new NamedUpdateAgents();
+    private final PlayerQuestViews _playerViews = new PlayerQuestViews(this);
+    private final QuestEventBus _eventBus = new QuestEventBus();
     private final Map<String, Quest> _quests = new HashMap<>(20);
     private final Map<String, Quest> _created = new HashMap<>(20);
 
+    private final int _queryChunkSize;
+
+    private int _version;
+
     /**
      * Constructor.
      *
+     * <p>Saved quest data files are queued in the loader. The constructor
+     * waits for all of the loaders files to finish loading.</p>
+     *
      * @param plugin    The owning plugin.
      * @param dataNode  The managers data node.
+     * @param loader    The loader used to load quest data files.
      */
-    public QuestManager(Plugin plugin, IDataNode dataNode) {
+    public QuestManager(Plugin plugin, IDataNode dataNode, ParallelLoader loader) {
         PreCon.notNull(plugin);
         PreCon.notNull(dataNode);
+        PreCon.notNull(loader);
 
         _plugin = plugin;
         _dataNode = dataNode;
 
-        load();
+        _statsNode = ArborianQuests.getSaveQueue().getDataNode(plugin, "stats");
+        _progressStorage = new ProgressStorage(plugin, dataNode);
+        _queryChunkSize = dataNode.getInteger("query-chunk-size", 200);
+
+        load(loader);
     }
 
     @Override
@@ -79,6 +107,80 @@ public class QuestManager implements IPluginOwned {
         return _dataNode;
     }
 
+    /**
+     * Get the data node that quest statistics are stored in.
+     */
+    IDataNode getStatsNode() {
+        return _statsNode;
+    }
+
+    /**
+     * Get the player progress storage.
+     */
+    public ProgressStorage getProgressStorage() {
+        return _progressStorage;
+    }
+
+    /**
+     * Get the index of quests players are currently in.
+     */
+    public PlayerQuestIndex getPlayerIndex() {
+        return _playerIndex;
+    }
+
+    /**
+     * Get the version of the managers quests.
+     *
+     * <p>The version changes whenever a quest is created, removed or its
+     * display name is changed. Used to determine if information cached
+     * about the quests is stale.</p>
+     */
+    public int getVersion() {
+        return _version;
+    }
+
+    /**
+     * Get the quest event bus.
+     */
+    public QuestEventBus getEventBus() {
+        return _eventBus;
+    }
+
+    /**
+     * Get the per-player views of current quests.
+     */
+    public PlayerQuestViews getPlayerViews() {
+        return _playerViews;
+    }
+
+    /**
+     * Attach a subscriber that is notified when a quest becomes resolvable by path.
+     *
+     * <p>Invoked for primary quests created during the session, including their
+     * existing sub quests, and for new sub quests.</p>
+     *
+     * @param subscriber  The subscriber.
+     */
+    public void onQuestCreate(IUpdateSubscriber<Quest> subscriber) {
+        PreCon.notNull(subscriber);
+
+        _agents.getAgent("onQuestCreate").addSubscriber(subscriber);
+    }
+
+    /**
+     * Attach a subscriber that is notified when a quest is removed.
+     *
+     * <p>Sub quests of the removed quest are removed with it but are
+     * not reported separately.</p>
+     *
+     * @param subscriber  The subscriber.
+     */
+    public void onQuestRemove(IUpdateSubscriber<Quest> subscriber) {
+        PreCon.notNull(subscriber);
+
+        _agents.getAgent("onQuestRemove").addSubscriber(subscriber);
+    }
+
     /**
      * Create or retrieve a primary quest.
      *
@@ -96,22 +198,36 @@ public class QuestManager implements IPluginOwned {
         PreCon.notNullOrEmpty(questName);
         PreCon.notNull(displayName);
 
-        questName = questName.toLowerCase();
+        questName = QuestPath.toLowerCase(questName);
 
         Quest quest = _quests.get(questName);
         if (quest != null)
             return quest;
 
-        IDataNode dataNode = DataStorage.get(ArborianQuests.getPlugin(), new DataPath("quests." + questName));
+        // use the saved instance so the player index references the same quest
+        quest = _created.get(questName);
+        if (quest != null) {
+
+            quest.setDisplayName(displayName);
+            quest.getDataNode().set("display", displayName);
+            ArborianQuests.getSaveQueue().markDirty(quest.getDataNode());
+
+            _quests.put(questName, quest);
+            registerPaths(quest);
+            return quest;
+        }
+
+        IDataNode dataNode = ArborianQuests.getSaveQueue().getDataNode(_plugin, "quests." + questName);
         dataNode.load();
 
         dataNode.set("display", displayName);
-        dataNode.save();
+        ArborianQuests.getSaveQueue().markDirty(dataNode);
 
-        quest = new PrimaryQuest(questName, displayName, dataNode);
+        quest = new PrimaryQuest(this, questName, displayName, dataNode);
 
         _quests.put(questName, quest);
         _created.put(questName, quest);
+        registerPaths(quest);
 
         return quest;
     }
@@ -130,9 +246,18 @@ public class QuestManager implements IPluginOwned {
 
         if (quest instanceof PrimaryQuest) {
 
+            ArborianQuests.getSaveQueue().remove(quest.getDataNode());
             DataStorage.remove(ArborianQuests.getPlugin(), new DataPath("quests." + quest.getName()));
+            _playerIndex.removeQuest(quest);
+            _paths.remove(quest.getPath());
             _created.remove(quest.getName());
-            return _quests.remove(quest.getName()) != null;
+            removeStats(quest);
+
+            boolean isRemoved = _quests.remove(quest.getName()) != null;
+
+            _version++;
+            _agents.update("onQuestRemove", quest);
+            return isRemoved;
         }
         else if (quest instanceof SubQuest) {
 
@@ -160,11 +285,43 @@ public class QuestManager implements IPluginOwned {
     public Quest getQuest(String questName) {
         PreCon.notNullOrEmpty(questName);
 
-        if (questName.indexOf('.') != -1) {
-            return getSubQuest(questName);
-        }
+        return _paths.get(questName);
+    }
 
-        return _quests.get(questName.toLowerCase());
+    /**
+     * Get a quest by path.
+     *
+     * @param path  The quest path.
+     *
+     * @return  The quest instance or null if not found.
+     */
+    @Nullable
+    public Quest getQuest(QuestPath path) {
+        PreCon.notNull(path);
+
+        return _paths.get(path.getPathName());
+    }
+
+    /**
+     * Start streaming the ID's of players whose progress in a quest matches a filter.
+     *
+     * <p>Candidate players are found one quest at a time and checked in chunks
+     * across ticks. The chunk size is set using the "query-chunk-size" setting.</p>
+     *
+     * @param quest       The quest to query.
+     * @param filter      The filter players must match.
+     * @param onMatch     Invoked with the ID of each matching player.
+     * @param onComplete  Optional. Invoked once all players are checked.
+     *
+     * @return  The started query.
+     */
+    public ProgressQuery query(Quest quest, IProgressFilter filter,
+                               IUpdateSubscriber<UUID> onMatch, @Nullable Runnable onComplete) {
+        PreCon.notNull(quest);
+        PreCon.notNull(filter);
+        PreCon.notNull(onMatch);
+
+        return new ProgressQuery(_plugin, quest, filter, _queryChunkSize, onMatch, onComplete).start();
     }
 
     /**
@@ -182,43 +339,95 @@ public class QuestManager implements IPluginOwned {
         return Collections.unmodifiableCollection(_created.values());
     }
 
-    private void load() {
+    private void load(ParallelLoader loader) {
 
-        // load quests
         List<String> questNames = _dataNode.getStringList("quests", null);
-        if (questNames != null) {
+        List<IDataNode> nodes = new ArrayList<>(questNames != null ? questNames.size() : 0);
 
+        // queue quest files to load in parallel
+        if (questNames != null) {
             for (String questName : questNames) {
+                nodes.add(loader.load("quests." + questName,
+                        ArborianQuests.getSaveQueue().getDataNode(_plugin, "quests." + questName)));
+            }
+        }
+
+        loader.load("stats", _statsNode);
+        loader.await();
+
+        // register quests on the main thread
+        if (questNames != null) {
 
-                IDataNode node = DataStorage.get(_plugin, new DataPath("quests." + questName));
-                node.load();
+            for (int i = 0; i < questNames.size(); i++) {
+
+                String questName = questNames.get(i);
+                IDataNode node = nodes.get(i);
 
                 String displayName = node.getString("display", questName);
                 if (displayName == null)
                     throw new AssertionError();
 
-                PrimaryQuest quest = new PrimaryQuest(questName, displayName, node);
+                PrimaryQuest quest = new PrimaryQuest(this, questName, displayName, node);
+                quest.loadQuests();
 
                 _created.put(questName, quest);
             }
         }
+
+        _playerIndex.build(_created.values(), loader.getThreads());
     }
 
-    @Nullable
-    private Quest getSubQuest(String questName) {
+    /*
+     * Invoked when a sub quest is created.
+     */
+    void onQuestCreated(Quest quest) {
+
+        Quest parent = quest.getParent();
 
-        String[] names = TextUtils.PATTERN_DOT.split(questName);
+        // sub quests of primary quests not created during the session are not resolvable
+        if (parent != null && _paths.get(parent.getPathName()) == parent) {
+            _paths.put(quest.getPath(), quest);
+            _version++;
+            _agents.update("onQuestCreate", quest);
+        }
+    }
 
-        Quest current = getQuest(names[0]);
-        if (current == null)
-            return null;
+    /*
+     * Invoked when a quests display name is changed.
+     */
+    void onQuestRenamed() {
+        _version++;
+        _playerViews.invalidateAll();
+    }
 
-        for (int i= 1; i < names.length; i++) {
-            current = current.getQuest(names[i]);
-            if (current == null)
-                return null;
+    /*
+     * Invoked when a sub quest is removed.
+     */
+    void onQuestRemoved(Quest quest) {
+        _paths.remove(quest.getPath());
+        _playerIndex.removeQuest(quest);
+        removeStats(quest);
+        _version++;
+        _agents.update("onQuestRemove", quest);
+    }
+
+    // remove the stored statistics of a quest and its sub quests
+    private static void removeStats(Quest quest) {
+        quest.getStats().remove();
+
+        for (Quest subQuest : quest.getQuests()) {
+            removeStats(subQuest);
         }
+    }
 
-        return current;
+    // add a quest and its sub quests to the path trie
+    private void registerPaths(Quest quest) {
+        _paths.put(quest.getPath(), quest);
+        _version++;
+        _agents.update("onQuestCreate", quest);
+
+        for (Quest subQuest : quest.getQuests()) {
+            registerPaths(subQuest);
+        }
     }
 }
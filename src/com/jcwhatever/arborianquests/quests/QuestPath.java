@@ -0,0 +1,210 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests;
+
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable, interned quest path.
+ *
+ * <p>A quest path is the lower case names of a quest and its parent quests
+ * delimited with periods. i.e. primaryQuestName.subQuest1.subQuest2</p>
+ *
+ * <p>Names and paths are converted to lower case one character at a time using
+ * {@link #toLowerCase(char)} so the conversion does not depend on the default
+ * locale and matches the quest managers path index.</p>
+ *
+ * <p>Paths are interned so there is only ever one instance per path and
+ * instances can be compared by reference.</p>
+ */
+public final class QuestPath {
+
+    private static final ConcurrentHashMap<String, QuestPath> _interned = new ConcurrentHashMap<>(50);
+
+    /**
+     * Get the interned path of a dotted path string.
+     *
+     * @param path  The path. i.e. questName.subQuestName
+     */
+    public static QuestPath of(String path) {
+        PreCon.notNullOrEmpty(path);
+
+        path = toLowerCase(path);
+
+        QuestPath result = _interned.get(path);
+        if (result != null)
+            return result;
+
+        int index = path.lastIndexOf('.');
+
+        result = index == -1
+                ? new QuestPath(null, path, path)
+                : new QuestPath(of(path.substring(0, index)), path.substring(index + 1), path);
+
+        QuestPath current = _interned.putIfAbsent(path, result);
+        return current != null ? current : result;
+    }
+
+    /**
+     * Convert a quest name or path to lower case.
+     *
+     * <p>Returns the same string if it is already lower case.</p>
+     *
+     * @param name  The name or path.
+     */
+    public static String toLowerCase(String name) {
+        PreCon.notNull(name);
+
+        for (int i = 0, len = name.length(); i < len; i++) {
+
+            char ch = name.charAt(i);
+            if (toLowerCase(ch) == ch)
+                continue;
+
+            char[] chars = name.toCharArray();
+            for (int j = i; j < len; j++) {
+                chars[j] = toLowerCase(chars[j]);
+            }
+
+            return new String(chars);
+        }
+
+        return name;
+    }
+
+    /**
+     * Convert a character of a quest name or path to lower case.
+     *
+     * @param ch  The character.
+     */
+    public static char toLowerCase(char ch) {
+        return Character.toLowerCase(ch);
+    }
+
+    private final QuestPath _parent;
+    private final String _name;
+    private final String _path;
+    private final int _depth;
+
+    private QuestPath(@Nullable QuestPath parent, String name, String path) {
+        PreCon.notNullOrEmpty(name);
+
+        _parent = parent;
+        _name = name;
+        _path = path;
+        _depth = parent != null ? parent._depth + 1 : 0;
+    }
+
+    /**
+     * Get the name of the last quest in the path.
+     */
+    public String getName() {
+        return _name;
+    }
+
+    /**
+     * Get the full dotted path.
+     */
+    public String getPathName() {
+        return _path;
+    }
+
+    /**
+     * Get the path of the parent quest.
+     *
+     * @return  The parent path or null if the path is of a primary quest.
+     */
+    @Nullable
+    public QuestPath getParent() {
+        return _parent;
+    }
+
+    /**
+     * Get the number of parents in the path.
+     *
+     * <p>The depth of a primary quest path is 0.</p>
+     */
+    public int getDepth() {
+        return _depth;
+    }
+
+    /**
+     * Get the path of the primary quest.
+     */
+    public QuestPath getPrimary() {
+        QuestPath path = this;
+        while (path._parent != null) {
+            path = path._parent;
+        }
+        return path;
+    }
+
+    /**
+     * Get the path of a sub quest.
+     *
+     * @param name  The name of the sub quest.
+     */
+    public QuestPath child(String name) {
+        PreCon.notNullOrEmpty(name);
+
+        return of(_path + '.' + name);
+    }
+
+    /**
+     * Determine if the path is the same as or a descendant of another path.
+     *
+     * @param path  The other path.
+     */
+    public boolean startsWith(QuestPath path) {
+        PreCon.notNull(path);
+
+        QuestPath current = this;
+        while (current != null) {
+            if (current == path)
+                return true;
+
+            current = current._parent;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return _path.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj == this;
+    }
+
+    @Override
+    public String toString() {
+        return _path;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests;
+
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import javax.annotation.Nullable;
+
+/**
+ * A character trie that resolves dotted quest path strings to quests.
+ *
+ * <p>A path is resolved in a single pass over its characters without allocating
+ * and without splitting the path. Matching is case insensitive.</p>
+ *
+ * <p>Sub quests are stored below the '.' child of their parent quests node, so
+ * removing a quest removes its sub quests as well. Nodes that no longer lead
+ * to a quest are pruned when a quest is removed.</p>
+ *
+ * <p>Changes are made on the main thread. Lookups are safe from any thread.</p>
+ */
+class QuestPathTrie {
+
+    private static final Node[] EMPTY_NODES = new Node[0];
+
+    private final Node _root = new Node('\0');
+
+    /**
+     * Get the quest at a path.
+     *
+     * @param path  The dotted path.
+     *
+     * @return  The quest or null if not found.
+     */
+    @Nullable
+    Quest get(CharSequence path) {
+        PreCon.notNull(path);
+
+        Node node = _root;
+
+        for (int i = 0, len = path.length(); i < len; i++) {
+            node = node.getChild(QuestPath.toLowerCase(path.charAt(i)));
+            if (node == null)
+                return null;
+        }
+
+        return node.quest;
+    }
+
+    /**
+     * Add a quest.
+     *
+     * @param path   The quests path.
+     * @param quest  The quest.
+     */
+    void put(QuestPath path, Quest quest) {
+        PreCon.notNull(path);
+        PreCon.notNull(quest);
+
+        String pathName = path.getPathName();
+        Node node = _root;
+
+        for (int i = 0, len = pathName.length(); i < len; i++) {
+            node = node.getOrCreateChild(pathName.charAt(i));
+        }
+
+        node.quest = quest;
+    }
+
+    /**
+     * Remove a quest and all of its sub quests.
+     *
+     * @param path  The quests path.
+     */
+    void remove(QuestPath path) {
+        PreCon.notNull(path);
+
+        String pathName = path.getPathName();
+        Node[] nodes = new Node[pathName.length() + 1];
+        nodes[0] = _root;
+
+        for (int i = 0, len = pathName.length(); i < len; i++) {
+            nodes[i + 1] = nodes[i].getChild(pathName.charAt(i));
+            if (nodes[i + 1] == null)
+                return;
+        }
+
+        Node node = nodes[nodes.length - 1];
+        node.quest = null;
+        node.removeChild('.');
+
+        // prune nodes that no longer lead to a quest
+        for (int i = nodes.length - 1; i > 0; i--) {
+
+            if (nodes[i].quest != null || nodes[i].children.length != 0)
+                break;
+
+            nodes[i - 1].removeChild(nodes[i].key);
+        }
+    }
+
+    private static class Node {
+
+        final char key;
+        volatile Node[] children = EMPTY_NODES;
+        volatile Quest quest;
+
+        Node(char key) {
+            this.key = key;
+        }
+
+        @Nullable
+        Node getChild(char key) {
+            Node[] children = this.children;
+            for (Node child : children) {
+                if (child.key == key)
+                    return child;
+            }
+            return null;
+        }
+
+        Node getOrCreateChild(char key) {
+
+            Node child = getChild(key);
+            if (child != null)
+                return child;
+
+            int size = children.length;
+
+            Node[] newChildren = new Node[size + 1];
+            System.arraycopy(children, 0, newChildren, 0, size);
+
+            child = new Node(key);
+            newChildren[size] = child;
+
+            // replaced as a whole so readers on other threads see a consistent array
+            children = newChildren;
+
+            return child;
+        }
+
+        void removeChild(char key) {
+
+            Node[] children = this.children;
+
+            for (int i = 0; i < children.length; i++) {
+                if (children[i].key != key)
+                    continue;
+
+                int size = children.length - 1;
+
+                Node[] newChildren = new Node[size];
+                System.arraycopy(children, 0, newChildren, 0, i);
+                System.arraycopy(children, i + 1, newChildren, i, size - i);
+
+                this.children = newChildren;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests;
+
+import com.jcwhatever.arborianquests.ArborianQuests;
+import com.jcwhatever.arborianquests.quests.QuestStatus.CurrentQuestStatus;
+import com.jcwhatever.arborianquests.quests.progress.IQuestProgressStore;
+import com.jcwhatever.nucleus.storage.IDataNode;
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Live player statistics of a quest.
+ *
+ * <p>The number of players in each status, the number of completions and the
+ * time players took to complete the quest are updated as player statuses change.
+ * The statistics of all quests are stored together in the "stats" data file, apart
+ * from player progress, so updating them does not rewrite a quests data file. The
+ * time each player accepted the quest is stored with the players progress.</p>
+ *
+ * <p>The status counts are recounted at startup from the statuses read to build
+ * the {@link PlayerQuestIndex} so counts left stale by a crash between saving
+ * progress and saving the statistics are corrected.</p>
+ */
+public class QuestStats {
+
+    private static final QuestStatus[] STATUSES = QuestStatus.values();
+
+    private final Quest _quest;
+    private final int[] _counts = new int[STATUSES.length];
+
+    private IDataNode _dataNode;
+    private int _completions;
+    private int _timedCompletions;
+    private long _totalCompletionTime;
+
+    /**
+     * Constructor.
+     *
+     * @param quest  The quest.
+     */
+    QuestStats(Quest quest) {
+        _quest = quest;
+    }
+
+    /**
+     * Get the quest.
+     */
+    public Quest getQuest() {
+        return _quest;
+    }
+
+    /**
+     * Get the number of players in a status.
+     *
+     * @param status  The status. Players with {@link QuestStatus#NONE}
+     *                are not counted.
+     */
+    public int getCount(QuestStatus status) {
+        PreCon.notNull(status);
+        PreCon.isValid(status != QuestStatus.NONE, "Players with status NONE are not counted.");
+
+        load();
+
+        return _counts[status.ordinal()];
+    }
+
+    /**
+     * Get the number of players currently in the quest.
+     */
+    public int getInProgress() {
+        load();
+
+        return _counts[QuestStatus.INCOMPLETE.ordinal()] + _counts[QuestStatus.RERUN.ordinal()];
+    }
+
+    /**
+     * Get the number of times the quest has been completed, including reruns.
+     */
+    public int getCompletions() {
+        load();
+
+        return _completions;
+    }
+
+    /**
+     * Get the average time players took to complete the quest in milliseconds.
+     *
+     * <p>Only completions of quests accepted after statistics were added are timed.</p>
+     *
+     * @return  The average time or -1 if no completions were timed.
+     */
+    public long getAverageCompletionTime() {
+        load();
+
+        return _timedCompletions == 0
+                ? -1
+                : _totalCompletionTime / _timedCompletions;
+    }
+
+    /*
+     * Invoked after a players status is changed in the quests progress store.
+     */
+    void onStatusChanged(UUID playerId, QuestStatus previous, QuestStatus status) {
+
+        if (previous == status)
+            return;
+
+        load();
+
+        if (previous != QuestStatus.NONE && _counts[previous.ordinal()] > 0) {
+            _counts[previous.ordinal()]--;
+            _dataNode.set("counts." + previous.name(), _counts[previous.ordinal()]);
+        }
+
+        if (status != QuestStatus.NONE) {
+            _counts[status.ordinal()]++;
+            _dataNode.set("counts." + status.name(), _counts[status.ordinal()]);
+        }
+
+        IQuestProgressStore progress = _quest.getProgress();
+
+        if (status.getCurrentStatus() == CurrentQuestStatus.IN_PROGRESS) {
+            progress.setAcceptedTime(playerId, System.currentTimeMillis());
+        }
+        else if (status == QuestStatus.COMPLETED
+                && previous.getCurrentStatus() == CurrentQuestStatus.IN_PROGRESS) {
+
+            long accepted = progress.getAcceptedTime(playerId);
+            progress.setAcceptedTime(playerId, -1);
+
+            _completions++;
+            _dataNode.set("completions", _completions);
+
+            if (accepted >= 0) {
+                _timedCompletions++;
+                _totalCompletionTime += System.currentTimeMillis() - accepted;
+                _dataNode.set("timed-completions", _timedCompletions);
+                _dataNode.set("total-completion-time", _totalCompletionTime);
+            }
+        }
+
+        ArborianQuests.getSaveQueue().markDirty(_dataNode);
+    }
+
+    /*
+     * Recount the quests players by status. Invoked at startup on the main thread
+     * with the statuses of every player in the quest.
+     */
+    void count(QuestStatus[] statuses) {
+
+        load();
+
+        int[] counts = new int[STATUSES.length];
+
+        for (QuestStatus status : statuses) {
+            if (status != QuestStatus.NONE)
+                counts[status.ordinal()]++;
+        }
+
+        // only rewrite the stats file if the stored counts are wrong
+        if (_dataNode.hasNode("counts") && Arrays.equals(counts, _counts))
+            return;
+
+        System.arraycopy(counts, 0, _counts, 0, counts.length);
+
+        for (QuestStatus s : STATUSES) {
+            if (s != QuestStatus.NONE)
+                _dataNode.set("counts." + s.name(), _counts[s.ordinal()]);
+        }
+
+        ArborianQuests.getSaveQueue().markDirty(_dataNode);
+    }
+
+    /*
+     * Remove the stored statistics. Invoked when the quest is removed.
+     */
+    void remove() {
+
+        IDataNode statsNode = _quest.getManager().getStatsNode();
+
+        statsNode.remove(getKey());
+        ArborianQuests.getSaveQueue().markDirty(statsNode);
+
+        _dataNode = null;
+    }
+
+    // The quest path can only be resolved once the quest is fully
+    // constructed so the statistics are loaded on first use.
+    private void load() {
+
+        if (_dataNode != null)
+            return;
+
+        _dataNode = _quest.getManager().getStatsNode().getNode(getKey());
+
+        for (QuestStatus status : STATUSES) {
+            _counts[status.ordinal()] = status != QuestStatus.NONE
+                    ? _dataNode.getInteger("counts." + status.name(), 0)
+                    : 0;
+        }
+
+        _completions = _dataNode.getInteger("completions", 0);
+        _timedCompletions = _dataNode.getInteger("timed-completions", 0);
+        _totalCompletionTime = _dataNode.getLong("total-completion-time", 0);
+    }
+
+    // sub quest statistics are not nested inside of the parent quests statistics
+    private String getKey() {
+        return _quest.getPathName().replace('.', '/');
+    }
+}
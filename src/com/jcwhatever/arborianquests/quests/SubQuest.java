@@ -39,7 +39,6 @@ public class SubQuest extends Quest {
 
     private final Quest _parent;
     private Deque<Quest> _fullPath;
-    private String fullName;
 
     /**
      * Constructor.
@@ -50,9 +49,7 @@ public class SubQuest extends Quest {
      * @param dataNode     The quests data node.
      */
     public SubQuest(Quest parent, String questName, String displayName, IDataNode dataNode) {
-        super(questName, displayName, dataNode);
-
-        PreCon.notNull(parent);
+        super(getParentManager(parent), questName, displayName, dataNode);
 
         _parent = parent;
     }
@@ -104,23 +101,14 @@ public class SubQuest extends Quest {
     }
 
     @Override
-    public String getPathName() {
-        if (fullName == null) {
-            Deque<Quest> quests = getFullPath();
-
-            StringBuilder sb = new StringBuilder(quests.size() * 15);
-
-            while (!quests.isEmpty()) {
-                sb.append(quests.getLast());
-
-                if (!quests.isEmpty()) {
-                    sb.append('.');
-                }
-            }
+    protected QuestPath createPath() {
+        return _parent.getPath().child(getName());
+    }
 
-            fullName = sb.toString();
-        }
+    // check the parent before it is used in the super constructor call
+    private static QuestManager getParentManager(Quest parent) {
+        PreCon.notNull(parent);
 
-        return fullName;
+        return parent.getManager();
     }
 }
@@ -0,0 +1,105 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.events;
+
+import com.jcwhatever.arborianquests.quests.Quest;
+
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/**
+ * A players quest status, flag or objective changed.
+ *
+ * <p>Event instances are reused by the {@link QuestEventBus} and are only
+ * valid while they are being handled.</p>
+ */
+public class QuestEvent {
+
+    private QuestEventType _type;
+    private Quest _quest;
+    private UUID _playerId;
+    private String _detail;
+
+    QuestEvent() {}
+
+    /**
+     * Get the event type.
+     */
+    public QuestEventType getType() {
+        return _type;
+    }
+
+    /**
+     * Get the quest the event is for.
+     */
+    public Quest getQuest() {
+        return _quest;
+    }
+
+    /**
+     * Get the ID of the player the event is for.
+     */
+    public UUID getPlayerId() {
+        return _playerId;
+    }
+
+    /**
+     * Get the name of the flag that was set or cleared.
+     *
+     * @return  The flag name or null if the event is not a flag event.
+     */
+    @Nullable
+    public String getFlagName() {
+        return _type == QuestEventType.FLAG_SET || _type == QuestEventType.FLAG_CLEAR
+                ? _detail
+                : null;
+    }
+
+    /**
+     * Get the key of the players new objective.
+     *
+     * @return  The objective key or null if the event is not an objective
+     * event or the objective was cleared.
+     */
+    @Nullable
+    public String getObjectiveKey() {
+        return _type == QuestEventType.OBJECTIVE
+                ? _detail
+                : null;
+    }
+
+    void set(QuestEventType type, Quest quest, UUID playerId, @Nullable String detail) {
+        _type = type;
+        _quest = quest;
+        _playerId = playerId;
+        _detail = detail;
+    }
+
+    void clear() {
+        _quest = null;
+        _playerId = null;
+        _detail = null;
+    }
+}
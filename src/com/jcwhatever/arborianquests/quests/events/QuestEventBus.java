@@ -0,0 +1,205 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.events;
+
+import com.jcwhatever.arborianquests.quests.Quest;
+import com.jcwhatever.arborianquests.quests.QuestPath;
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/**
+ * Dispatches quest events to handlers.
+ *
+ * <p>Handlers are kept in dispatch tables indexed by quest path and event type.
+ * Handler arrays are replaced when a handler is added or removed so firing an
+ * event only reads the arrays. Events are fired using reused event instances,
+ * so firing an event that has no handlers does not allocate.</p>
+ *
+ * <p>Must only be used from the main thread.</p>
+ */
+public class QuestEventBus {
+
+    private static final QuestEventType[] TYPES = QuestEventType.values();
+    private static final IQuestEventHandler[] EMPTY = new IQuestEventHandler[0];
+
+    private final Map<QuestPath, IQuestEventHandler[][]> _byPath = new HashMap<>(20);
+    private final IQuestEventHandler[][] _global = createTable();
+
+    // one event instance per nested firing depth
+    private QuestEvent[] _events = new QuestEvent[] { new QuestEvent(), new QuestEvent() };
+    private int _depth;
+
+    /**
+     * Add a handler.
+     *
+     * @param path     The path of the quest to handle events for. Null to handle
+     *                 events of all quests. Events of sub quests are not included.
+     * @param type     The event type to handle.
+     * @param handler  The handler.
+     */
+    public void addHandler(@Nullable QuestPath path, QuestEventType type, IQuestEventHandler handler) {
+        PreCon.notNull(type);
+        PreCon.notNull(handler);
+
+        IQuestEventHandler[][] table = path == null ? _global : _byPath.get(path);
+        if (table == null) {
+            table = createTable();
+            _byPath.put(path, table);
+        }
+
+        IQuestEventHandler[] handlers = table[type.ordinal()];
+        IQuestEventHandler[] result = Arrays.copyOf(handlers, handlers.length + 1);
+        result[handlers.length] = handler;
+
+        table[type.ordinal()] = result;
+    }
+
+    /**
+     * Remove a handler.
+     *
+     * @param path     The quest path the handler was added with.
+     * @param type     The event type the handler was added with.
+     * @param handler  The handler.
+     *
+     * @return  True if the handler was found and removed.
+     */
+    public boolean removeHandler(@Nullable QuestPath path, QuestEventType type, IQuestEventHandler handler) {
+        PreCon.notNull(type);
+        PreCon.notNull(handler);
+
+        IQuestEventHandler[][] table = path == null ? _global : _byPath.get(path);
+        if (table == null)
+            return false;
+
+        IQuestEventHandler[] handlers = table[type.ordinal()];
+
+        for (int i = 0; i < handlers.length; i++) {
+
+            if (handlers[i] != handler)
+                continue;
+
+            IQuestEventHandler[] result = new IQuestEventHandler[handlers.length - 1];
+            System.arraycopy(handlers, 0, result, 0, i);
+            System.arraycopy(handlers, i + 1, result, i, handlers.length - i - 1);
+
+            table[type.ordinal()] = result;
+
+            if (path != null && isEmpty(table))
+                _byPath.remove(path);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Determine if there are handlers for an event.
+     *
+     * @param quest  The quest.
+     * @param type   The event type.
+     */
+    public boolean hasHandlers(Quest quest, QuestEventType type) {
+        PreCon.notNull(quest);
+        PreCon.notNull(type);
+
+        if (_global[type.ordinal()].length != 0)
+            return true;
+
+        IQuestEventHandler[][] table = _byPath.isEmpty() ? null : _byPath.get(quest.getPath());
+        return table != null && table[type.ordinal()].length != 0;
+    }
+
+    /**
+     * Fire an event.
+     *
+     * @param type      The event type.
+     * @param quest     The quest the event is for.
+     * @param playerId  The ID of the player the event is for.
+     * @param detail    The flag name of a flag event or the objective key of
+     *                  an objective event.
+     */
+    public void fire(QuestEventType type, Quest quest, UUID playerId, @Nullable String detail) {
+        PreCon.notNull(type);
+        PreCon.notNull(quest);
+        PreCon.notNull(playerId);
+
+        IQuestEventHandler[] global = _global[type.ordinal()];
+        IQuestEventHandler[][] table = _byPath.isEmpty() ? null : _byPath.get(quest.getPath());
+        IQuestEventHandler[] handlers = table != null ? table[type.ordinal()] : EMPTY;
+
+        if (global.length == 0 && handlers.length == 0)
+            return;
+
+        if (_depth == _events.length) {
+            _events = Arrays.copyOf(_events, _depth * 2);
+            for (int i = _depth; i < _events.length; i++) {
+                _events[i] = new QuestEvent();
+            }
+        }
+
+        QuestEvent event = _events[_depth++];
+        event.set(type, quest, playerId, detail);
+
+        try {
+            dispatch(handlers, event);
+            dispatch(global, event);
+        }
+        finally {
+            event.clear();
+            _depth--;
+        }
+    }
+
+    private static void dispatch(IQuestEventHandler[] handlers, QuestEvent event) {
+        for (IQuestEventHandler handler : handlers) {
+            try {
+                handler.onEvent(event);
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static IQuestEventHandler[][] createTable() {
+        IQuestEventHandler[][] table = new IQuestEventHandler[TYPES.length][];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    private static boolean isEmpty(IQuestEventHandler[][] table) {
+        for (IQuestEventHandler[] handlers : table) {
+            if (handlers.length != 0)
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+import com.jcwhatever.arborianquests.Msg;
+import com.jcwhatever.arborianquests.quests.Quest;
+import com.jcwhatever.arborianquests.storage.DurableFiles;
+import com.jcwhatever.arborianquests.storage.DurableFiles.IFileWriter;
+import com.jcwhatever.arborianquests.storage.ISaveSnapshot;
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Stores player progress in memory and persists it to a compact binary file.
+ *
+ * <p>The file contains the quests flag name table followed by each players
+ * status ordinal, objective key, accepted time and flag bit set.</p>
+ *
+ * <p>The progress file is loaded the first time the store is used. Saving takes
+ * a snapshot of the in-memory model so the file can be written off of the main
+ * thread.</p>
+ *
+ * <p>The encoded record of each player is kept between saves and only the records
+ * of players that changed are encoded again. Flag ID's are never reassigned so
+ * records remain valid when flags are added.</p>
+ */
+public class BinaryProgressStore extends MemoryProgressStore {
+
+    private static final int MAGIC = 0x41515042; // AQPB
+    private static final byte VERSION = 2;
+
+    private final File _folder;
+    private final boolean _isDurable;
+    private final Map<UUID, byte[]> _records = new HashMap<>(50);
+    private final Set<UUID> _dirtyPlayers = new HashSet<>(10);
+    private final ByteArrayOutputStream _buffer = new ByteArrayOutputStream(64);
+    private final DataOutputStream _out = new DataOutputStream(_buffer);
+    private File _file;
+
+    /**
+     * Constructor.
+     *
+     * @param folder     The folder the progress file is stored in.
+     * @param quest      The quest the store is for.
+     * @param isDurable  True to replace the progress file atomically and sync it to disk.
+     */
+    public BinaryProgressStore(File folder, Quest quest, boolean isDurable) {
+        super(quest);
+
+        PreCon.notNull(folder);
+
+        _folder = folder;
+        _isDurable = isDurable;
+    }
+
+    /**
+     * Determine if files are synced to disk when written.
+     */
+    public boolean isDurable() {
+        return _isDurable;
+    }
+
+    @Override
+    public ISaveSnapshot snapshot() {
+        return createFileSnapshot();
+    }
+
+    /**
+     * Create a snapshot that writes the entire in-memory model
+     * to the progress file.
+     */
+    protected ISaveSnapshot createFileSnapshot() {
+
+        load();
+
+        FlagIdTable flagIds = getFlagIds();
+        Map<UUID, PlayerProgress> players = getAllProgress();
+
+        String[] flagNames = new String[flagIds.size()];
+        for (int i = 0; i < flagNames.length; i++) {
+            flagNames[i] = flagIds.getName(i);
+        }
+
+        // discard records of removed players
+        for (UUID playerId : _dirtyPlayers) {
+            if (!players.containsKey(playerId))
+                _records.remove(playerId);
+        }
+
+        byte[][] records = new byte[players.size()][];
+
+        int i = 0;
+        for (Entry<UUID, PlayerProgress> entry : players.entrySet()) {
+
+            UUID playerId = entry.getKey();
+            byte[] record = _records.get(playerId);
+
+            if (record == null || _dirtyPlayers.contains(playerId)) {
+                record = encode(playerId, entry.getValue());
+                _records.put(playerId, record);
+            }
+
+            records[i++] = record;
+        }
+
+        _dirtyPlayers.clear();
+
+        return new Snapshot(getFile(), _isDurable, flagNames, records);
+    }
+
+    /**
+     * Get the progress file.
+     */
+    protected File getFile() {
+        if (_file == null)
+            _file = new File(_folder, getQuest().getPathName() + ".dat");
+
+        return _file;
+    }
+
+    @Override
+    protected void onChange(UUID playerId) {
+        _dirtyPlayers.add(playerId);
+        super.onChange(playerId);
+    }
+
+    @Override
+    protected void onLoad() throws IOException {
+
+        File file = getFile();
+        if (!file.exists())
+            return;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+
+            read(in);
+        }
+        catch (IOException e) {
+            Msg.severe("Failed to load quest progress file: {0}", file);
+            throw e;
+        }
+    }
+
+    // read the file contents
+    private void read(DataInputStream in) throws IOException {
+
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a quest progress file.");
+
+        // version 1 does not have accepted times
+        byte version = in.readByte();
+        if (version < 1 || version > VERSION)
+            throw new IOException("Unsupported quest progress file version: " + version);
+
+        FlagIdTable flagIds = getFlagIds();
+
+        int totalFlags = in.readInt();
+        for (int i = 0; i < totalFlags; i++) {
+            flagIds.intern(in.readUTF());
+        }
+
+        int totalPlayers = in.readInt();
+        for (int i = 0; i < totalPlayers; i++) {
+
+            UUID playerId = new UUID(in.readLong(), in.readLong());
+            byte status = PlayerProgress.checkStatus(in.readByte());
+            String objective = in.readBoolean() ? in.readUTF() : null;
+            long accepted = version >= 2 ? in.readLong() : -1;
+
+            short totalWords = in.readShort();
+            if (totalWords < 0)
+                throw new IOException("Invalid flag count: " + totalWords);
+
+            long[] words = new long[totalWords];
+            for (int j = 0; j < words.length; j++) {
+                words[j] = in.readLong();
+            }
+
+            putProgress(playerId, new PlayerProgress(status, BitSet.valueOf(words), objective, accepted));
+        }
+    }
+
+    // encode a players record
+    private byte[] encode(UUID playerId, PlayerProgress progress) {
+
+        _buffer.reset();
+
+        try {
+            _out.writeLong(playerId.getMostSignificantBits());
+            _out.writeLong(playerId.getLeastSignificantBits());
+            _out.writeByte(progress.status);
+
+            _out.writeBoolean(progress.objective != null);
+            if (progress.objective != null)
+                _out.writeUTF(progress.objective);
+
+            _out.writeLong(progress.accepted);
+
+            long[] words = progress.flags.toLongArray();
+
+            _out.writeShort(words.length);
+            for (long word : words) {
+                _out.writeLong(word);
+            }
+        }
+        catch (IOException e) {
+            throw new AssertionError(e);
+        }
+
+        return _buffer.toByteArray();
+    }
+
+    /*
+     * Immutable copy of the stores contents.
+     */
+    private static class Snapshot implements ISaveSnapshot, IFileWriter {
+
+        final File file;
+        final boolean isDurable;
+        final String[] flagNames;
+        final byte[][] records;
+
+        Snapshot(File file, boolean isDurable, String[] flagNames, byte[][] records) {
+            this.file = file;
+            this.isDurable = isDurable;
+            this.flagNames = flagNames;
+            this.records = records;
+        }
+
+        @Override
+        public File getFile() {
+            return file;
+        }
+
+        @Override
+        public void write() throws IOException {
+            DurableFiles.replace(file, isDurable, this);
+        }
+
+        @Override
+        public void write(DataOutputStream out) throws IOException {
+
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+
+            // flag names, index is the flag ID
+            out.writeInt(flagNames.length);
+            for (String flagName : flagNames) {
+                out.writeUTF(flagName);
+            }
+
+            // pre-encoded player records
+            out.writeInt(records.length);
+            for (byte[] record : records) {
+                out.write(record);
+            }
+        }
+    }
+}
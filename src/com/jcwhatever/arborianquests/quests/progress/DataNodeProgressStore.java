@@ -0,0 +1,300 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+import com.jcwhatever.arborianquests.ArborianQuests;
+import com.jcwhatever.arborianquests.quests.QuestStatus;
+import com.jcwhatever.nucleus.storage.IDataNode;
+import com.jcwhatever.nucleus.utils.PreCon;
+import com.jcwhatever.nucleus.utils.text.TextUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Stores player progress in the "players" node of the quests data node.
+ *
+ * <p>All players that have ever played the quest are kept in the quests
+ * data file.</p>
+ *
+ * <p>The status and flags of every player in the quest are read into a status table
+ * and per-player flag sets keyed by player ID the first time the store is used, so
+ * status and flag lookups do not build string paths or allocate. Changes are written
+ * through to the data node.</p>
+ */
+public class DataNodeProgressStore implements IQuestProgressStore {
+
+    private final IDataNode _playerNodes;
+    private final Map<UUID, QuestStatus> _statuses = new ConcurrentHashMap<>(50);
+    private final Map<UUID, Set<String>> _flags = new HashMap<>(50);
+
+    private boolean _isLoaded;
+
+    /**
+     * Constructor.
+     *
+     * @param playerNodes  The node that contains the player nodes.
+     */
+    public DataNodeProgressStore(IDataNode playerNodes) {
+        PreCon.notNull(playerNodes);
+
+        _playerNodes = playerNodes;
+    }
+
+    @Override
+    public QuestStatus getStatus(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        load();
+
+        QuestStatus status = _statuses.get(playerId);
+        return status != null ? status : QuestStatus.NONE;
+    }
+
+    @Override
+    public void setStatus(UUID playerId, QuestStatus status) {
+        PreCon.notNull(playerId);
+        PreCon.notNull(status);
+
+        if (status == QuestStatus.NONE) {
+            clearPlayer(playerId);
+            return;
+        }
+
+        load();
+
+        _playerNodes.set(playerId.toString() + ".status", status);
+        _statuses.put(playerId, status);
+        ArborianQuests.getSaveQueue().markDirty(_playerNodes);
+    }
+
+    @Override
+    public boolean hasFlag(UUID playerId, String flagName) {
+        PreCon.notNull(playerId);
+        PreCon.notNullOrEmpty(flagName);
+
+        load();
+
+        Set<String> flags = _flags.get(playerId);
+        return flags != null && flags.contains(flagName);
+    }
+
+    @Override
+    public void setFlag(UUID playerId, String flagName) {
+        PreCon.notNull(playerId);
+        PreCon.notNullOrEmpty(flagName);
+
+        load();
+
+        Set<String> flags = _flags.get(playerId);
+        if (flags == null) {
+            flags = new HashSet<>(10);
+            _flags.put(playerId, flags);
+        }
+
+        if (!flags.add(flagName))
+            return;
+
+        _playerNodes.set(playerId.toString() + ".flags." + flagName, true);
+        addPlayer(playerId);
+        ArborianQuests.getSaveQueue().markDirty(_playerNodes);
+    }
+
+    @Override
+    public void clearFlag(UUID playerId, String flagName) {
+        PreCon.notNull(playerId);
+        PreCon.notNullOrEmpty(flagName);
+
+        load();
+
+        Set<String> flags = _flags.get(playerId);
+        if (flags == null || !flags.remove(flagName))
+            return;
+
+        _playerNodes.remove(playerId.toString() + ".flags." + flagName);
+        ArborianQuests.getSaveQueue().markDirty(_playerNodes);
+    }
+
+    @Override
+    public <T extends Collection<String>> T getFlags(UUID playerId, T output) {
+        PreCon.notNull(playerId);
+        PreCon.notNull(output);
+
+        load();
+
+        Set<String> flags = _flags.get(playerId);
+        if (flags != null)
+            output.addAll(flags);
+
+        return output;
+    }
+
+    @Nullable
+    @Override
+    public String getObjective(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        if (!hasPlayer(playerId))
+            return null;
+
+        return _playerNodes.getString(playerId.toString() + ".assignment");
+    }
+
+    @Override
+    public void setObjective(UUID playerId, @Nullable String assignmentKey) {
+        PreCon.notNull(playerId);
+
+        if (assignmentKey == null && !hasPlayer(playerId))
+            return;
+
+        _playerNodes.set(playerId.toString() + ".assignment", assignmentKey);
+        addPlayer(playerId);
+        ArborianQuests.getSaveQueue().markDirty(_playerNodes);
+    }
+
+    @Override
+    public long getAcceptedTime(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        if (!hasPlayer(playerId))
+            return -1;
+
+        return _playerNodes.getLong(playerId.toString() + ".accepted", -1);
+    }
+
+    @Override
+    public void setAcceptedTime(UUID playerId, long time) {
+        PreCon.notNull(playerId);
+
+        if (time < 0 && !hasPlayer(playerId))
+            return;
+
+        _playerNodes.set(playerId.toString() + ".accepted", time < 0 ? null : time);
+        addPlayer(playerId);
+        ArborianQuests.getSaveQueue().markDirty(_playerNodes);
+    }
+
+    @Override
+    public boolean hasPlayer(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        load();
+
+        return _statuses.containsKey(playerId);
+    }
+
+    @Override
+    public <T extends Collection<UUID>> T getPlayers(T output) {
+        PreCon.notNull(output);
+
+        load();
+
+        output.addAll(_statuses.keySet());
+        return output;
+    }
+
+    @Override
+    public Iterator<UUID> getPlayerIterator() {
+
+        load();
+
+        return Collections.unmodifiableSet(_statuses.keySet()).iterator();
+    }
+
+    @Override
+    public <T extends Collection<UUID>> T getPlayersWithFlag(String flagName, T output) {
+        PreCon.notNullOrEmpty(flagName);
+        PreCon.notNull(output);
+
+        load();
+
+        for (Entry<UUID, Set<String>> entry : _flags.entrySet()) {
+            if (entry.getValue().contains(flagName))
+                output.add(entry.getKey());
+        }
+
+        return output;
+    }
+
+    @Override
+    public void clearPlayer(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        load();
+
+        if (_statuses.remove(playerId) == null)
+            return;
+
+        _flags.remove(playerId);
+        _playerNodes.remove(playerId.toString());
+
+        ArborianQuests.getSaveQueue().markDirty(_playerNodes);
+    }
+
+    // add a player without a status to the status table after their progress is changed
+    private void addPlayer(UUID playerId) {
+        if (!_statuses.containsKey(playerId))
+            _statuses.put(playerId, QuestStatus.NONE);
+    }
+
+    // read the status and flags of every player the first time the store is used
+    private void load() {
+
+        if (_isLoaded)
+            return;
+
+        _isLoaded = true;
+
+        for (IDataNode playerNode : _playerNodes) {
+
+            UUID playerId = TextUtils.parseUUID(playerNode.getName());
+            if (playerId == null)
+                continue;
+
+            //noinspection ConstantConditions
+            _statuses.put(playerId, playerNode.getEnum("status", QuestStatus.NONE, QuestStatus.class));
+
+            IDataNode flagNode = playerNode.getNode("flags");
+            Set<String> flags = new HashSet<>(10);
+
+            for (String flagName : flagNode.getSubNodeNames()) {
+                if (flagNode.getBoolean(flagName, false))
+                    flags.add(flagName);
+            }
+
+            if (!flags.isEmpty())
+                _flags.put(playerId, flags);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Interns the flag names of a quest to small integer ID's.
+ *
+ * <p>ID's are assigned in the order flags are first seen and are used as
+ * bit indexes into a players flag bit set.</p>
+ */
+public class FlagIdTable {
+
+    private final Map<String, Integer> _ids = new HashMap<>(15);
+    private final List<String> _names = new ArrayList<>(15);
+
+    /**
+     * Get the ID of a flag, assigning a new ID if the flag has not been seen.
+     *
+     * @param flagName  The name of the flag.
+     */
+    public int intern(String flagName) {
+        PreCon.notNullOrEmpty(flagName);
+
+        Integer id = _ids.get(flagName);
+        if (id != null)
+            return id;
+
+        id = _names.size();
+        _names.add(flagName);
+        _ids.put(flagName, id);
+
+        return id;
+    }
+
+    /**
+     * Get the ID of a flag without assigning one.
+     *
+     * @param flagName  The name of the flag.
+     *
+     * @return  The ID or -1 if the flag has not been seen.
+     */
+    public int getId(String flagName) {
+        PreCon.notNull(flagName);
+
+        Integer id = _ids.get(flagName);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Get the name of a flag by ID.
+     *
+     * @param id  The flag ID.
+     *
+     * @return  The name or null if the ID is not assigned.
+     */
+    @Nullable
+    public String getName(int id) {
+        return id >= 0 && id < _names.size() ? _names.get(id) : null;
+    }
+
+    /**
+     * Get the number of interned flags.
+     */
+    public int size() {
+        return _names.size();
+    }
+}
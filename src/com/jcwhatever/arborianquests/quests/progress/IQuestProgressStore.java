@@ -0,0 +1,184 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+import com.jcwhatever.arborianquests.quests.QuestStatus;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/**
+ * Stores the progress of players in a single quest.
+ *
+ * <p>Progress consists of the players {@link QuestStatus}, the flags set on the
+ * player, the key of the players current objective description and the time the
+ * player accepted the quest.</p>
+ *
+ * <p>Implementations are responsible for persisting changes, typically by marking
+ * their storage dirty in the plugins save queue.</p>
+ */
+public interface IQuestProgressStore {
+
+    /**
+     * Get a players current status in the quest.
+     *
+     * @param playerId  The ID of the player.
+     *
+     * @return  The status or {@link QuestStatus#NONE} if the player has no progress.
+     */
+    QuestStatus getStatus(UUID playerId);
+
+    /**
+     * Set a players status in the quest.
+     *
+     * <p>Setting {@link QuestStatus#NONE} removes all of the players progress
+     * in the quest.</p>
+     *
+     * @param playerId  The ID of the player.
+     * @param status    The status.
+     */
+    void setStatus(UUID playerId, QuestStatus status);
+
+    /**
+     * Determine if a player has a flag set.
+     *
+     * @param playerId  The ID of the player.
+     * @param flagName  The name of the flag.
+     */
+    boolean hasFlag(UUID playerId, String flagName);
+
+    /**
+     * Set a flag on a player.
+     *
+     * @param playerId  The ID of the player.
+     * @param flagName  The name of the flag.
+     */
+    void setFlag(UUID playerId, String flagName);
+
+    /**
+     * Clear a flag on a player.
+     *
+     * @param playerId  The ID of the player.
+     * @param flagName  The name of the flag.
+     */
+    void clearFlag(UUID playerId, String flagName);
+
+    /**
+     * Get the names of the flags set on a player.
+     *
+     * @param playerId  The ID of the player.
+     * @param output    The output collection to add the flag names to.
+     *
+     * @return  The output collection.
+     */
+    <T extends Collection<String>> T getFlags(UUID playerId, T output);
+
+    /**
+     * Get the key of the players current objective description.
+     *
+     * @param playerId  The ID of the player.
+     *
+     * @return  The key or null if not set.
+     */
+    @Nullable
+    String getObjective(UUID playerId);
+
+    /**
+     * Set the key of the players current objective description.
+     *
+     * @param playerId       The ID of the player.
+     * @param assignmentKey  The objective key or null to clear.
+     */
+    void setObjective(UUID playerId, @Nullable String assignmentKey);
+
+    /**
+     * Get the time the player accepted the quest.
+     *
+     * @param playerId  The ID of the player.
+     *
+     * @return  The time in milliseconds since the epoch or -1 if not set.
+     */
+    long getAcceptedTime(UUID playerId);
+
+    /**
+     * Set the time the player accepted the quest.
+     *
+     * @param playerId  The ID of the player.
+     * @param time      The time in milliseconds since the epoch or -1 to clear.
+     */
+    void setAcceptedTime(UUID playerId, long time);
+
+    /**
+     * Determine if the store has any progress for a player.
+     *
+     * @param playerId  The ID of the player.
+     */
+    boolean hasPlayer(UUID playerId);
+
+    /**
+     * Get the ID's of players that have progress in the store.
+     *
+     * <p>Includes offline players.</p>
+     *
+     * @param output  The output collection to add the player ID's to.
+     *
+     * @return  The output collection.
+     */
+    <T extends Collection<UUID>> T getPlayers(T output);
+
+    /**
+     * Get an iterator over the ID's of players that have progress in the store.
+     *
+     * <p>Includes offline players. The iterator does not copy the players and is
+     * weakly consistent: it can be used across ticks while the store is changed
+     * and never throws a {@link java.util.ConcurrentModificationException}. Players
+     * added or removed after the iterator is created may or may not be returned.</p>
+     *
+     * <p>The iterator is read only.</p>
+     */
+    Iterator<UUID> getPlayerIterator();
+
+    /**
+     * Get the ID's of players that have a flag set.
+     *
+     * <p>Includes offline players. Stores that do not keep all players resident
+     * may need to load the progress of offline players.</p>
+     *
+     * @param flagName  The name of the flag.
+     * @param output    The output collection to add the player ID's to.
+     *
+     * @return  The output collection.
+     */
+    <T extends Collection<UUID>> T getPlayersWithFlag(String flagName, T output);
+
+    /**
+     * Remove all of a players progress.
+     *
+     * @param playerId  The ID of the player.
+     */
+    void clearPlayer(UUID playerId);
+}
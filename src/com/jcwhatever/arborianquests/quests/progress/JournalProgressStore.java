@@ -0,0 +1,390 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+import com.jcwhatever.arborianquests.Msg;
+import com.jcwhatever.arborianquests.quests.Quest;
+import com.jcwhatever.arborianquests.quests.QuestStatus;
+import com.jcwhatever.arborianquests.storage.DurableFiles;
+import com.jcwhatever.arborianquests.storage.ISaveSnapshot;
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link BinaryProgressStore} that appends changes to a journal instead of
+ * rewriting the progress file.
+ *
+ * <p>Each change is appended as a small record to the quests journal file, so
+ * the cost of a write does not depend on the number of players in the quest.
+ * Once enough records accumulate, the in-memory model is written to the progress
+ * file and the journal is truncated. Both happen on the background writer that
+ * owns the progress file, so appends and compaction are never reordered.</p>
+ *
+ * <p>On load, the journal is replayed on top of the progress file. Every record
+ * sets an absolute value, so replaying records that are already part of the
+ * progress file is harmless.</p>
+ */
+public class JournalProgressStore extends BinaryProgressStore {
+
+    private static final byte OP_STATUS = 1;
+    private static final byte OP_FLAG_SET = 2;
+    private static final byte OP_FLAG_CLEAR = 3;
+    private static final byte OP_OBJECTIVE = 4;
+    private static final byte OP_CLEAR_PLAYER = 5;
+    private static final byte OP_ACCEPTED = 6;
+
+    private final int _compactThreshold;
+    private final ByteArrayOutputStream _buffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream _out = new DataOutputStream(_buffer);
+
+    private File _journalFile;
+    private int _totalRecords;
+
+    /**
+     * Constructor.
+     *
+     * @param folder            The folder the progress and journal files are stored in.
+     * @param quest             The quest the store is for.
+     * @param compactThreshold  The number of journal records that triggers a compaction.
+     * @param isDurable         True to sync appended records to disk and replace the
+     *                          progress file atomically.
+     */
+    public JournalProgressStore(File folder, Quest quest, int compactThreshold, boolean isDurable) {
+        super(folder, quest, isDurable);
+
+        PreCon.greaterThanZero(compactThreshold);
+
+        _compactThreshold = compactThreshold;
+    }
+
+    @Override
+    public void setStatus(UUID playerId, QuestStatus status) {
+        PreCon.notNull(playerId);
+        PreCon.notNull(status);
+
+        if (status == QuestStatus.NONE) {
+            clearPlayer(playerId);
+            return;
+        }
+
+        super.setStatus(playerId, status);
+        append(OP_STATUS, playerId, null, status.ordinal());
+    }
+
+    @Override
+    public void setFlag(UUID playerId, String flagName) {
+
+        if (hasFlag(playerId, flagName))
+            return;
+
+        super.setFlag(playerId, flagName);
+        append(OP_FLAG_SET, playerId, flagName, 0);
+    }
+
+    @Override
+    public void clearFlag(UUID playerId, String flagName) {
+
+        if (!hasFlag(playerId, flagName))
+            return;
+
+        super.clearFlag(playerId, flagName);
+        append(OP_FLAG_CLEAR, playerId, flagName, 0);
+    }
+
+    @Override
+    public void setObjective(UUID playerId, @Nullable String assignmentKey) {
+
+        if (assignmentKey == null && !hasPlayer(playerId))
+            return;
+
+        super.setObjective(playerId, assignmentKey);
+        append(OP_OBJECTIVE, playerId, assignmentKey, 0);
+    }
+
+    @Override
+    public void setAcceptedTime(UUID playerId, long time) {
+
+        if (time < 0 && !hasPlayer(playerId))
+            return;
+
+        super.setAcceptedTime(playerId, time);
+        append(OP_ACCEPTED, playerId, null, time);
+    }
+
+    @Override
+    public void clearPlayer(UUID playerId) {
+
+        if (!hasPlayer(playerId))
+            return;
+
+        super.clearPlayer(playerId);
+        append(OP_CLEAR_PLAYER, playerId, null, 0);
+    }
+
+    @Override
+    public ISaveSnapshot snapshot() {
+
+        if (_totalRecords >= _compactThreshold) {
+
+            // the in-memory model already contains the buffered records
+            _buffer.reset();
+            _totalRecords = 0;
+
+            return new CompactSnapshot(createFileSnapshot(), getJournalFile());
+        }
+
+        byte[] records = _buffer.toByteArray();
+        _buffer.reset();
+
+        return new AppendSnapshot(getFile(), getJournalFile(), isDurable(), records);
+    }
+
+    @Override
+    public void onSnapshotFailed(ISaveSnapshot snapshot) {
+
+        // records in a failed append are no longer buffered, compact so the
+        // progress file includes them.
+        _totalRecords = _compactThreshold;
+        markDirty();
+    }
+
+    @Override
+    protected void onLoad() throws IOException {
+
+        super.onLoad();
+
+        File journal = getJournalFile();
+        if (!journal.exists())
+            return;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(journal)))) {
+
+            replay(in);
+        }
+        catch (IOException e) {
+            Msg.severe("Failed to replay quest progress journal: {0}", journal);
+            throw e;
+        }
+    }
+
+    /**
+     * Get the journal file.
+     */
+    protected File getJournalFile() {
+        if (_journalFile == null) {
+            File file = getFile();
+            _journalFile = new File(file.getParentFile(), file.getName() + ".log");
+        }
+        return _journalFile;
+    }
+
+    // Append a record to the buffer. The text is the flag name or objective
+    // key and the value is the status ordinal or accepted time.
+    private void append(byte op, UUID playerId, @Nullable String text, long value) {
+
+        // changes to a store that failed to load are never saved
+        if (isLoadFailed())
+            return;
+
+        // writing to the in-memory buffer cannot fail
+        try {
+            _out.writeByte(op);
+            _out.writeLong(playerId.getMostSignificantBits());
+            _out.writeLong(playerId.getLeastSignificantBits());
+
+            switch (op) {
+                case OP_STATUS:
+                    _out.writeByte((int)value);
+                    break;
+
+                case OP_FLAG_SET:
+                    // fall through
+                case OP_FLAG_CLEAR:
+                    _out.writeUTF(text);
+                    break;
+
+                case OP_OBJECTIVE:
+                    _out.writeBoolean(text != null);
+                    if (text != null)
+                        _out.writeUTF(text);
+                    break;
+
+                case OP_ACCEPTED:
+                    _out.writeLong(value);
+                    break;
+            }
+        }
+        catch (IOException e) {
+            throw new AssertionError(e);
+        }
+
+        _totalRecords++;
+    }
+
+    // apply journal records to the in-memory model
+    private void replay(DataInputStream in) throws IOException {
+
+        FlagIdTable flagIds = getFlagIds();
+
+        while (true) {
+
+            byte op;
+            try {
+                op = in.readByte();
+            }
+            catch (EOFException e) {
+                return;
+            }
+
+            try {
+                UUID playerId = new UUID(in.readLong(), in.readLong());
+
+                switch (op) {
+                    case OP_STATUS:
+                        getOrCreateProgress(playerId).status = PlayerProgress.checkStatus(in.readByte());
+                        break;
+
+                    case OP_FLAG_SET:
+                        getOrCreateProgress(playerId).flags.set(flagIds.intern(in.readUTF()));
+                        break;
+
+                    case OP_FLAG_CLEAR:
+                        String flagName = in.readUTF();
+                        PlayerProgress progress = getProgress(playerId);
+                        int id = flagIds.getId(flagName);
+                        if (progress != null && id != -1)
+                            progress.flags.clear(id);
+                        break;
+
+                    case OP_OBJECTIVE:
+                        String objective = in.readBoolean() ? in.readUTF() : null;
+                        PlayerProgress current = objective != null
+                                ? getOrCreateProgress(playerId)
+                                : getProgress(playerId);
+                        if (current != null)
+                            current.objective = objective;
+                        break;
+
+                    case OP_ACCEPTED:
+                        long accepted = in.readLong();
+                        PlayerProgress timed = accepted >= 0
+                                ? getOrCreateProgress(playerId)
+                                : getProgress(playerId);
+                        if (timed != null)
+                            timed.accepted = Math.max(-1, accepted);
+                        break;
+
+                    case OP_CLEAR_PLAYER:
+                        removeProgress(playerId);
+                        break;
+
+                    default:
+                        throw new IOException("Invalid journal record: " + op);
+                }
+            }
+            catch (EOFException e) {
+                // record was partially written when the server stopped, compact on the
+                // next save so new records are not appended after the partial record.
+                Msg.warning("Ignoring incomplete record at end of journal: {0}", getJournalFile());
+                _totalRecords = _compactThreshold;
+                return;
+            }
+
+            _totalRecords++;
+        }
+    }
+
+    /*
+     * Appends records to the journal.
+     */
+    private static class AppendSnapshot implements ISaveSnapshot {
+
+        final File file;
+        final File journal;
+        final boolean isDurable;
+        final byte[] records;
+
+        AppendSnapshot(File file, File journal, boolean isDurable, byte[] records) {
+            this.file = file;
+            this.journal = journal;
+            this.isDurable = isDurable;
+            this.records = records;
+        }
+
+        @Override
+        public File getFile() {
+            // keyed by the progress file so appends and compaction share a writer
+            return file;
+        }
+
+        @Override
+        public void write() throws IOException {
+
+            if (records.length == 0)
+                return;
+
+            DurableFiles.append(journal, isDurable, records);
+        }
+    }
+
+    /*
+     * Writes the progress file and truncates the journal.
+     */
+    private static class CompactSnapshot implements ISaveSnapshot {
+
+        final ISaveSnapshot fileSnapshot;
+        final File journal;
+
+        CompactSnapshot(ISaveSnapshot fileSnapshot, File journal) {
+            this.fileSnapshot = fileSnapshot;
+            this.journal = journal;
+        }
+
+        @Override
+        public File getFile() {
+            return fileSnapshot.getFile();
+        }
+
+        @Override
+        public void write() throws IOException {
+
+            fileSnapshot.write();
+
+            if (journal.exists() && !journal.delete())
+                throw new IOException("Failed to truncate journal: " + journal);
+        }
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+import com.jcwhatever.arborianquests.ArborianQuests;
+import com.jcwhatever.arborianquests.Msg;
+import com.jcwhatever.arborianquests.quests.Quest;
+import com.jcwhatever.arborianquests.quests.QuestStatus;
+import com.jcwhatever.arborianquests.storage.IAsyncPersistable;
+import com.jcwhatever.arborianquests.storage.ISaveSnapshot;
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Abstract implementation of a progress store that keeps all of a quests
+ * player progress in memory.
+ *
+ * <p>Flag names are interned per quest to small integers so that each players flags
+ * are stored as a bit set, and the players status is stored as its ordinal.
+ * Reads are served entirely from memory.</p>
+ *
+ * <p>Implementations load the model the first time the store is used and persist
+ * it using snapshots so that writing can happen off of the main thread.</p>
+ */
+public abstract class MemoryProgressStore implements IQuestProgressStore, IAsyncPersistable {
+
+    private final Quest _quest;
+    private final FlagIdTable _flagIds = new FlagIdTable();
+    private final Map<UUID, PlayerProgress> _players = new ConcurrentHashMap<>(50);
+
+    private boolean _isLoaded;
+    private boolean _isLoadFailed;
+
+    /**
+     * Constructor.
+     *
+     * @param quest  The quest the store is for.
+     */
+    public MemoryProgressStore(Quest quest) {
+        PreCon.notNull(quest);
+
+        _quest = quest;
+    }
+
+    /**
+     * Get the quest the store is for.
+     */
+    public Quest getQuest() {
+        return _quest;
+    }
+
+    @Override
+    public QuestStatus getStatus(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        PlayerProgress progress = getProgress(playerId);
+        return progress != null ? progress.getStatus() : QuestStatus.NONE;
+    }
+
+    @Override
+    public void setStatus(UUID playerId, QuestStatus status) {
+        PreCon.notNull(playerId);
+        PreCon.notNull(status);
+
+        if (status == QuestStatus.NONE) {
+            clearPlayer(playerId);
+            return;
+        }
+
+        getOrCreateProgress(playerId).setStatus(status);
+        onChange(playerId);
+    }
+
+    @Override
+    public boolean hasFlag(UUID playerId, String flagName) {
+        PreCon.notNull(playerId);
+        PreCon.notNullOrEmpty(flagName);
+
+        PlayerProgress progress = getProgress(playerId);
+        if (progress == null)
+            return false;
+
+        int id = _flagIds.getId(flagName);
+        return id != -1 && progress.flags.get(id);
+    }
+
+    @Override
+    public void setFlag(UUID playerId, String flagName) {
+        PreCon.notNull(playerId);
+        PreCon.notNullOrEmpty(flagName);
+
+        getOrCreateProgress(playerId).flags.set(_flagIds.intern(flagName));
+        onChange(playerId);
+    }
+
+    @Override
+    public void clearFlag(UUID playerId, String flagName) {
+        PreCon.notNull(playerId);
+        PreCon.notNullOrEmpty(flagName);
+
+        PlayerProgress progress = getProgress(playerId);
+        if (progress == null)
+            return;
+
+        int id = _flagIds.getId(flagName);
+        if (id == -1 || !progress.flags.get(id))
+            return;
+
+        progress.flags.clear(id);
+        onChange(playerId);
+    }
+
+    @Override
+    public <T extends Collection<String>> T getFlags(UUID playerId, T output) {
+        PreCon.notNull(playerId);
+        PreCon.notNull(output);
+
+        PlayerProgress progress = getProgress(playerId);
+        if (progress == null)
+            return output;
+
+        BitSet flags = progress.flags;
+
+        for (int i = flags.nextSetBit(0); i >= 0; i = flags.nextSetBit(i + 1)) {
+            output.add(_flagIds.getName(i));
+        }
+
+        return output;
+    }
+
+    @Nullable
+    @Override
+    public String getObjective(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        PlayerProgress progress = getProgress(playerId);
+        return progress != null ? progress.objective : null;
+    }
+
+    @Override
+    public void setObjective(UUID playerId, @Nullable String assignmentKey) {
+        PreCon.notNull(playerId);
+
+        // clearing the objective of a player without progress should not create progress
+        PlayerProgress progress = assignmentKey != null
+                ? getOrCreateProgress(playerId)
+                : getProgress(playerId);
+
+        if (progress == null)
+            return;
+
+        progress.objective = assignmentKey;
+        onChange(playerId);
+    }
+
+    @Override
+    public long getAcceptedTime(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        PlayerProgress progress = getProgress(playerId);
+        return progress != null ? progress.accepted : -1;
+    }
+
+    @Override
+    public void setAcceptedTime(UUID playerId, long time) {
+        PreCon.notNull(playerId);
+
+        PlayerProgress progress = time >= 0
+                ? getOrCreateProgress(playerId)
+                : getProgress(playerId);
+
+        if (progress == null)
+            return;
+
+        progress.accepted = Math.max(-1, time);
+        onChange(playerId);
+    }
+
+    @Override
+    public boolean hasPlayer(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        return getProgress(playerId) != null;
+    }
+
+    @Override
+    public <T extends Collection<UUID>> T getPlayers(T output) {
+        PreCon.notNull(output);
+
+        load();
+
+        output.addAll(_players.keySet());
+        return output;
+    }
+
+    @Override
+    public Iterator<UUID> getPlayerIterator() {
+
+        load();
+
+        return Collections.unmodifiableSet(_players.keySet()).iterator();
+    }
+
+    @Override
+    public <T extends Collection<UUID>> T getPlayersWithFlag(String flagName, T output) {
+        PreCon.notNullOrEmpty(flagName);
+        PreCon.notNull(output);
+
+        load();
+
+        int id = _flagIds.getId(flagName);
+        if (id == -1)
+            return output;
+
+        for (Entry<UUID, PlayerProgress> entry : _players.entrySet()) {
+            if (entry.getValue().flags.get(id))
+                output.add(entry.getKey());
+        }
+
+        return output;
+    }
+
+    @Override
+    public void clearPlayer(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        if (removeProgress(playerId))
+            onChange(playerId);
+    }
+
+    @Override
+    public void onSnapshotFailed(ISaveSnapshot snapshot) {
+        markDirty();
+    }
+
+    @Override
+    public void save() {
+
+        if (!_isLoaded || _isLoadFailed)
+            return;
+
+        ISaveSnapshot snapshot = snapshot();
+
+        try {
+            snapshot.write();
+        }
+        catch (IOException e) {
+            Msg.severe("Failed to save quest progress: {0}", snapshot.getFile());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Get the players in-memory progress.
+     *
+     * @param playerId  The ID of the player.
+     *
+     * @return  The progress or null if the player has no progress.
+     */
+    @Nullable
+    protected PlayerProgress getProgress(UUID playerId) {
+        load();
+
+        return _players.get(playerId);
+    }
+
+    /**
+     * Get the players in-memory progress, creating it if it does not exist.
+     *
+     * @param playerId  The ID of the player.
+     */
+    protected PlayerProgress getOrCreateProgress(UUID playerId) {
+        load();
+
+        PlayerProgress progress = _players.get(playerId);
+        if (progress == null) {
+            progress = new PlayerProgress();
+            _players.put(playerId, progress);
+        }
+        return progress;
+    }
+
+    /**
+     * Set a players in-memory progress.
+     *
+     * <p>Used while loading.</p>
+     *
+     * @param playerId  The ID of the player.
+     * @param progress  The players progress.
+     */
+    protected void putProgress(UUID playerId, PlayerProgress progress) {
+        _players.put(playerId, progress);
+    }
+
+    /**
+     * Remove a players in-memory progress.
+     *
+     * @param playerId  The ID of the player.
+     *
+     * @return  True if the player had progress.
+     */
+    protected boolean removeProgress(UUID playerId) {
+        load();
+
+        return _players.remove(playerId) != null;
+    }
+
+    /**
+     * Get all in-memory progress.
+     */
+    protected Map<UUID, PlayerProgress> getAllProgress() {
+        return _players;
+    }
+
+    /**
+     * Get the quests flag ID table.
+     */
+    protected FlagIdTable getFlagIds() {
+        return _flagIds;
+    }
+
+    /**
+     * Determine if the model is loaded.
+     */
+    protected boolean isLoaded() {
+        return _isLoaded;
+    }
+
+    /**
+     * Determine if the model failed to load.
+     *
+     * <p>A store that failed to load is never saved so that the incomplete
+     * in-memory model does not replace the stored progress.</p>
+     */
+    public boolean isLoadFailed() {
+        return _isLoadFailed;
+    }
+
+    /**
+     * Load the model if it is not already loaded.
+     */
+    protected void load() {
+
+        if (_isLoaded)
+            return;
+
+        _isLoaded = true;
+
+        try {
+            onLoad();
+        }
+        catch (IOException e) {
+            _isLoadFailed = true;
+
+            Msg.severe("Failed to load progress for quest '{0}'. Changes to the quests " +
+                    "progress will not be saved until the problem is fixed and the plugin is reloaded.",
+                    _quest.getPathName());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Mark the store as changed.
+     *
+     * <p>Does nothing if the model failed to load.</p>
+     */
+    protected void markDirty() {
+
+        if (_isLoadFailed)
+            return;
+
+        ArborianQuests.getSaveQueue().markDirty(this);
+    }
+
+    /**
+     * Invoked after a players progress is changed.
+     *
+     * <p>Marks the store dirty by default.</p>
+     *
+     * @param playerId  The ID of the player.
+     */
+    protected void onChange(UUID playerId) {
+        markDirty();
+    }
+
+    /**
+     * Invoked to load the in-memory model.
+     *
+     * <p>Use {@link #putProgress} and {@link #getFlagIds} to populate the model.</p>
+     *
+     * @throws IOException if the stored progress cannot be read completely.
+     */
+    protected abstract void onLoad() throws IOException;
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+import com.jcwhatever.arborianquests.quests.QuestStatus;
+
+import java.io.IOException;
+import java.util.BitSet;
+import javax.annotation.Nullable;
+
+/**
+ * In-memory progress of a single player in a single quest.
+ *
+ * <p>Flags are stored as a bit set indexed by the quests {@link FlagIdTable}.</p>
+ */
+public class PlayerProgress {
+
+    private static final QuestStatus[] STATUSES = QuestStatus.values();
+
+    byte status;
+    final BitSet flags;
+    String objective;
+    long accepted = -1;
+
+    /**
+     * Constructor.
+     */
+    public PlayerProgress() {
+        this.flags = new BitSet();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param status     The status ordinal.
+     * @param flags      The flag bit set.
+     * @param objective  The objective key.
+     * @param accepted   The time the quest was accepted or -1.
+     */
+    PlayerProgress(byte status, BitSet flags, @Nullable String objective, long accepted) {
+        this.status = status;
+        this.flags = flags;
+        this.objective = objective;
+        this.accepted = accepted;
+    }
+
+    /**
+     * Get the players quest status.
+     */
+    public QuestStatus getStatus() {
+        return STATUSES[status];
+    }
+
+    /**
+     * Set the players quest status.
+     *
+     * @param status  The status.
+     */
+    public void setStatus(QuestStatus status) {
+        this.status = (byte)status.ordinal();
+    }
+
+    /*
+     * Check a status ordinal read from storage.
+     */
+    static byte checkStatus(int ordinal) throws IOException {
+
+        if (ordinal < 0 || ordinal >= STATUSES.length)
+            throw new IOException("Invalid quest status: " + ordinal);
+
+        return (byte)ordinal;
+    }
+
+    /**
+     * Get the players objective key.
+     */
+    @Nullable
+    public String getObjective() {
+        return objective;
+    }
+
+    /**
+     * Get the time the player accepted the quest.
+     *
+     * @return  The time in milliseconds since the epoch or -1 if not set.
+     */
+    public long getAcceptedTime() {
+        return accepted;
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+import com.jcwhatever.arborianquests.ArborianQuests;
+import com.jcwhatever.arborianquests.Msg;
+import com.jcwhatever.arborianquests.quests.QuestStatus;
+import com.jcwhatever.arborianquests.storage.SaveQueue;
+import com.jcwhatever.nucleus.managed.scheduler.IScheduledTask;
+import com.jcwhatever.nucleus.managed.scheduler.Scheduler;
+import com.jcwhatever.nucleus.mixins.IPluginOwned;
+import com.jcwhatever.nucleus.providers.storage.DataStorage;
+import com.jcwhatever.nucleus.storage.DataPath;
+import com.jcwhatever.nucleus.storage.IDataNode;
+import com.jcwhatever.nucleus.utils.PreCon;
+import com.jcwhatever.nucleus.utils.text.TextUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * Manages per-player progress shards.
+ *
+ * <p>Each player has a single data file that holds the players progress in
+ * every quest. A shard is loaded when the player joins or the first time it is
+ * needed. Once the player is offline, the shard is saved and unloaded after a
+ * grace period so that resident memory scales with the number of online players.</p>
+ *
+ * <p>A roster of the players that have progress in each quest and their status in
+ * the quest is kept resident and stored in the "progress-roster" data file, so that
+ * the players of a quest and their statuses can be found without loading the shards
+ * of offline players. The roster is only written when a player joins or leaves a
+ * quest or their status changes. If the roster file does not exist, it is built
+ * once from the stored shards.</p>
+ */
+public class PlayerShards implements IPluginOwned {
+
+    private final Plugin _plugin;
+    private final int _unloadDelay;
+    private final Map<UUID, IDataNode> _shards = new HashMap<>(50);
+    private final Map<UUID, IScheduledTask> _pendingUnloads = new HashMap<>(10);
+    private final Map<UUID, ReleaseTask> _releasing = new HashMap<>(10);
+    private final List<ShardedProgressStore> _stores = new ArrayList<>(25);
+    private final Map<String, Map<UUID, QuestStatus>> _rosters = new HashMap<>(25);
+
+    private IDataNode _rosterNode;
+
+    /**
+     * Constructor.
+     *
+     * @param plugin       The owning plugin.
+     * @param unloadDelay  The delay in ticks before the shard of an offline
+     *                     player is unloaded.
+     */
+    public PlayerShards(Plugin plugin, int unloadDelay) {
+        PreCon.notNull(plugin);
+        PreCon.positiveNumber(unloadDelay);
+
+        _plugin = plugin;
+        _unloadDelay = unloadDelay;
+    }
+
+    @Override
+    public Plugin getPlugin() {
+        return _plugin;
+    }
+
+    /**
+     * Get a players shard, loading it if it is not already loaded.
+     *
+     * @param playerId  The ID of the player.
+     */
+    public IDataNode getShard(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        IDataNode shard = _shards.get(playerId);
+        if (shard == null) {
+
+            // reuse an unloaded shard whose last save is not written yet
+            ReleaseTask release = _releasing.remove(playerId);
+            if (release != null) {
+                shard = release.shard;
+            }
+            else {
+                shard = ArborianQuests.getSaveQueue().getDataNode(_plugin, "progress." + playerId);
+                shard.load();
+            }
+
+            _shards.put(playerId, shard);
+
+            // shard of an offline player loaded by a script or command
+            if (Bukkit.getPlayer(playerId) == null)
+                scheduleUnload(playerId);
+        }
+
+        return shard;
+    }
+
+    /**
+     * Load a players shard in advance and cancel any pending unload.
+     *
+     * <p>Invoked when the player joins.</p>
+     *
+     * @param playerId  The ID of the player.
+     */
+    public void preload(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        IScheduledTask task = _pendingUnloads.remove(playerId);
+        if (task != null)
+            task.cancel();
+
+        getShard(playerId);
+    }
+
+    /**
+     * Unload a players shard after the unload delay.
+     *
+     * <p>Invoked when the player leaves. If the shard is used again before the
+     * delay expires it remains loaded until the delay ends. Joining the server
+     * cancels the unload.</p>
+     *
+     * @param playerId  The ID of the player.
+     */
+    public void scheduleUnload(final UUID playerId) {
+        PreCon.notNull(playerId);
+
+        if (_pendingUnloads.containsKey(playerId) || !_shards.containsKey(playerId))
+            return;
+
+        IScheduledTask task = Scheduler.runTaskLater(_plugin, Math.max(1, _unloadDelay), new Runnable() {
+            @Override
+            public void run() {
+                _pendingUnloads.remove(playerId);
+
+                if (Bukkit.getPlayer(playerId) == null)
+                    unload(playerId);
+            }
+        });
+
+        _pendingUnloads.put(playerId, task);
+    }
+
+    /**
+     * Get a players shard only if it is already loaded.
+     *
+     * @param playerId  The ID of the player.
+     *
+     * @return  The shard or null if not loaded.
+     */
+    @Nullable
+    public IDataNode getLoadedShard(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        return _shards.get(playerId);
+    }
+
+    /**
+     * Get the ID's of players whose shards are loaded.
+     *
+     * @param output  The output collection.
+     *
+     * @return  The output collection.
+     */
+    public <T extends Collection<UUID>> T getLoadedPlayers(T output) {
+        PreCon.notNull(output);
+
+        output.addAll(_shards.keySet());
+        return output;
+    }
+
+    /**
+     * Save and unload a players shard.
+     *
+     * @param playerId  The ID of the player.
+     *
+     * @return  True if the shard was loaded.
+     */
+    public boolean unload(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        return unload(playerId, true);
+    }
+
+    /*
+     * Unload the shard of an offline player that was loaded to be written or read
+     * in bulk. The shard is only saved if it has changes that are not written yet.
+     */
+    void release(UUID playerId) {
+
+        if (Bukkit.getPlayer(playerId) != null)
+            return;
+
+        unload(playerId, false);
+    }
+
+    /*
+     * Register a store so it is notified when a shard is unloaded.
+     */
+    void register(ShardedProgressStore store) {
+        _stores.add(store);
+    }
+
+    /*
+     * Remove a store that is no longer used.
+     */
+    void unregister(ShardedProgressStore store) {
+        _stores.remove(store);
+    }
+
+    /*
+     * Get the roster of a quest. Maps the ID of each player that has progress
+     * in the quest, including players whose shards are not loaded, to the
+     * players status in the quest.
+     */
+    Map<UUID, QuestStatus> getRoster(String questKey) {
+
+        Map<UUID, QuestStatus> roster = _rosters.get(questKey);
+        if (roster != null)
+            return roster;
+
+        // concurrent so the players can be iterated across ticks
+        roster = new ConcurrentHashMap<>(50);
+
+        IDataNode questNode = getRosterNode().getNode("quests").getNode(questKey);
+
+        for (String name : questNode.getSubNodeNames()) {
+
+            UUID playerId = TextUtils.parseUUID(name);
+            if (playerId == null)
+                continue;
+
+            //noinspection ConstantConditions
+            roster.put(playerId, questNode.getEnum(name, QuestStatus.NONE, QuestStatus.class));
+        }
+
+        _rosters.put(questKey, roster);
+        return roster;
+    }
+
+    /*
+     * Add a player to a quests roster or update the players status in the roster.
+     * QuestStatus.NONE is used for players that have progress but no status.
+     */
+    void setRosterStatus(String questKey, UUID playerId, QuestStatus status) {
+
+        if (getRoster(questKey).put(playerId, status) == status)
+            return;
+
+        _rosterNode.set("quests." + questKey + '.' + playerId, status);
+        ArborianQuests.getSaveQueue().markDirty(_rosterNode);
+    }
+
+    /*
+     * Remove a player from a quests roster.
+     */
+    void removeFromRoster(String questKey, UUID playerId) {
+
+        if (getRoster(questKey).remove(playerId) == null)
+            return;
+
+        _rosterNode.remove("quests." + questKey + '.' + playerId);
+        ArborianQuests.getSaveQueue().markDirty(_rosterNode);
+    }
+
+    private IDataNode getRosterNode() {
+
+        if (_rosterNode == null) {
+            _rosterNode = ArborianQuests.getSaveQueue().getDataNode(_plugin, "progress-roster");
+            _rosterNode.load();
+
+            if (!_rosterNode.getBoolean("built", false))
+                buildRoster();
+        }
+
+        return _rosterNode;
+    }
+
+    // Build the roster from the stored shards. Only needed once for
+    // progress that was stored before the roster existed.
+    private void buildRoster() {
+
+        Set<UUID> players = new HashSet<>(_shards.keySet());
+
+        File[] files = new File(_plugin.getDataFolder(), "progress").listFiles();
+        if (files != null) {
+            for (File file : files) {
+
+                String name = file.getName();
+                if (!name.endsWith(".yml"))
+                    continue;
+
+                UUID playerId = TextUtils.parseUUID(name.substring(0, name.length() - 4));
+                if (playerId != null)
+                    players.add(playerId);
+            }
+        }
+
+        Msg.info("Building the quest progress roster from {0} player files.", players.size());
+
+        for (UUID playerId : players) {
+
+            // shards that are not loaded are read without keeping them resident
+            IDataNode shard = _shards.get(playerId);
+            if (shard == null) {
+                shard = DataStorage.get(_plugin, new DataPath("progress." + playerId));
+                shard.load();
+            }
+
+            for (String questKey : shard.getSubNodeNames()) {
+                _rosterNode.set("quests." + questKey + '.' + playerId,
+                        shard.getEnum(questKey + ".status", QuestStatus.NONE, QuestStatus.class));
+            }
+        }
+
+        _rosterNode.set("built", true);
+        ArborianQuests.getSaveQueue().markDirty(_rosterNode);
+    }
+
+    private boolean unload(UUID playerId, boolean isSaveRequired) {
+
+        IScheduledTask task = _pendingUnloads.remove(playerId);
+        if (task != null)
+            task.cancel();
+
+        IDataNode shard = _shards.remove(playerId);
+        if (shard == null)
+            return false;
+
+        SaveQueue saveQueue = ArborianQuests.getSaveQueue();
+
+        // a shard with unsaved changes is already queued
+        if (isSaveRequired)
+            saveQueue.markDirty(shard);
+
+        // Keep the shard until its pending saves are written so that loading
+        // the player again does not read the file before they are written.
+        ReleaseTask release = new ReleaseTask(playerId, shard);
+        _releasing.put(playerId, release);
+        saveQueue.whenCommitted(release);
+
+        for (ShardedProgressStore store : _stores) {
+            store.onShardUnloaded(playerId);
+        }
+
+        return true;
+    }
+
+    /*
+     * Releases an unloaded shard once its save is written.
+     */
+    private class ReleaseTask implements Runnable {
+
+        final UUID playerId;
+        final IDataNode shard;
+
+        ReleaseTask(UUID playerId, IDataNode shard) {
+            this.playerId = playerId;
+            this.shard = shard;
+        }
+
+        @Override
+        public void run() {
+
+            // the shard was loaded or unloaded again
+            if (_releasing.get(playerId) != this)
+                return;
+
+            _releasing.remove(playerId);
+            ArborianQuests.getSaveQueue().unregister(shard);
+        }
+    }
+}
@@ -0,0 +1,622 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+import com.jcwhatever.arborianquests.ArborianQuests;
+import com.jcwhatever.arborianquests.Msg;
+import com.jcwhatever.arborianquests.quests.Quest;
+import com.jcwhatever.arborianquests.quests.QuestStatus;
+import com.jcwhatever.nucleus.managed.scheduler.IScheduledTask;
+import com.jcwhatever.nucleus.managed.scheduler.Scheduler;
+import com.jcwhatever.nucleus.mixins.IPluginOwned;
+import com.jcwhatever.nucleus.storage.IDataNode;
+import com.jcwhatever.nucleus.utils.PreCon;
+import com.jcwhatever.nucleus.utils.text.TextUtils;
+import org.bukkit.plugin.Plugin;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+
+/**
+ * Copies player progress from the "players" node of each quests data node
+ * into the stores of another {@link ProgressStorageMode}.
+ *
+ * <p>Players are copied in fixed size batches, one batch per tick, and only the
+ * player node names of the quests being copied or verified are held in memory.</p>
+ *
+ * <p>The position of the migration is stored in a data node so an interrupted
+ * migration can be resumed. The position is only advanced once the save queue has
+ * written the batch to the target, so a resumed migration never skips players
+ * whose copy was not written.</p>
+ *
+ * <p>Once all of a quests players are written, the quests progress is loaded
+ * again into a new target store and a checksum of each batch of loaded records is
+ * compared to a checksum of the source records. Batches that do not match are
+ * recorded as failures.</p>
+ *
+ * <p>Progress changed in the source after a player is copied is not carried over,
+ * so the migration should be repeated if the server was in use while it ran.</p>
+ */
+public class ProgressMigration implements IPluginOwned {
+
+    private final Plugin _plugin;
+    private final ProgressStorage _storage;
+    private final ProgressStorageMode _target;
+    private final int _batchSize;
+    private final IDataNode _cursor;
+    private final Deque<Quest> _queue = new ArrayDeque<>(25);
+    private final Deque<Verification> _verifications = new ArrayDeque<>(5);
+    private final int _totalQuests;
+    private final CRC32 _sourceCrc = new CRC32();
+    private final CRC32 _targetCrc = new CRC32();
+    private final List<String> _flags = new ArrayList<>(10);
+    private final List<UUID> _loadedShards = new ArrayList<>(25);
+
+    private Quest _current;
+    private IDataNode _source;
+    private IQuestProgressStore _targetStore;
+    private List<String> _playerNames;
+    private int _offset;
+    private int _completedQuests;
+    private boolean _isCopied;
+
+    private int _batchSequence;
+    private int _committedSequence;
+    private int _pendingCommits;
+
+    private IScheduledTask _task;
+
+    /**
+     * Constructor.
+     *
+     * @param plugin     The owning plugin.
+     * @param storage    The progress storage used to create the target stores.
+     * @param target     The storage mode to migrate to.
+     * @param batchSize  The number of players to copy per tick.
+     * @param cursor     The data node used to store the migration position.
+     * @param quests     The primary quests to migrate. Sub quests are included.
+     */
+    ProgressMigration(Plugin plugin, ProgressStorage storage, ProgressStorageMode target,
+                      int batchSize, IDataNode cursor, Collection<? extends Quest> quests) {
+
+        PreCon.notNull(plugin);
+        PreCon.notNull(storage);
+        PreCon.notNull(target);
+        PreCon.isValid(target != ProgressStorageMode.QUEST, "Cannot migrate to the source format.");
+        PreCon.isValid(target != storage.getMode(), "Cannot migrate to the current storage mode.");
+        PreCon.greaterThanZero(batchSize);
+        PreCon.notNull(cursor);
+        PreCon.notNull(quests);
+
+        _plugin = plugin;
+        _storage = storage;
+        _target = target;
+        _batchSize = batchSize;
+        _cursor = cursor;
+
+        // start over if the stored position is for another target
+        if (cursor.getEnum("target", null, ProgressStorageMode.class) != target) {
+            clearCursor();
+        }
+
+        Set<String> completed = new HashSet<>(cursor.getStringList("completed", new ArrayList<String>(0)));
+
+        List<Quest> all = new ArrayList<>(quests.size() * 2);
+        for (Quest quest : quests) {
+            addQuests(quest, all);
+        }
+
+        for (Quest quest : all) {
+            if (!completed.contains(quest.getPathName()))
+                _queue.add(quest);
+        }
+
+        _totalQuests = all.size();
+        _completedQuests = _totalQuests - _queue.size();
+    }
+
+    @Override
+    public Plugin getPlugin() {
+        return _plugin;
+    }
+
+    /**
+     * Get the storage mode being migrated to.
+     */
+    public ProgressStorageMode getTarget() {
+        return _target;
+    }
+
+    /**
+     * Determine if the migration is running.
+     */
+    public boolean isRunning() {
+        return _task != null;
+    }
+
+    /**
+     * Determine if all quests have been migrated.
+     */
+    public boolean isComplete() {
+        return _cursor.getBoolean("complete", false);
+    }
+
+    /**
+     * Get the total number of quests to migrate.
+     */
+    public int getTotalQuests() {
+        return _totalQuests;
+    }
+
+    /**
+     * Get the number of quests that have been migrated and verified.
+     */
+    public int getCompletedQuests() {
+        return _completedQuests;
+    }
+
+    /**
+     * Get the number of players copied and written to the target.
+     */
+    public int getMigratedPlayers() {
+        return _cursor.getInteger("migrated", 0);
+    }
+
+    /**
+     * Get the path of the quest currently being migrated.
+     *
+     * @return  The path or null if no quest is being migrated.
+     */
+    @Nullable
+    public String getCurrentQuest() {
+        return _current != null ? _current.getPathName() : null;
+    }
+
+    /**
+     * Get the number of players copied in the current quest.
+     */
+    public int getCurrentOffset() {
+        return _offset;
+    }
+
+    /**
+     * Get the number of players in the current quest.
+     */
+    public int getCurrentSize() {
+        return _playerNames != null ? _playerNames.size() : 0;
+    }
+
+    /**
+     * Get descriptions of the batches that failed verification.
+     */
+    public List<String> getFailures() {
+        return _cursor.getStringList("failed", new ArrayList<String>(0));
+    }
+
+    /**
+     * Start or resume the migration.
+     */
+    public void start() {
+
+        if (_task != null || isComplete())
+            return;
+
+        _cursor.set("target", _target);
+        ArborianQuests.getSaveQueue().markDirty(_cursor);
+
+        _task = Scheduler.runTaskRepeat(_plugin, 1, 1, new Runnable() {
+            @Override
+            public void run() {
+                runBatch();
+            }
+        });
+    }
+
+    /**
+     * Stop the migration. The migration can be resumed later.
+     */
+    public void stop() {
+
+        if (_task == null)
+            return;
+
+        _task.cancel();
+        _task = null;
+
+        ArborianQuests.getSaveQueue().markDirty(_cursor);
+    }
+
+    /**
+     * Remove the stored migration position.
+     */
+    void clearCursor() {
+        for (String name : new ArrayList<>(_cursor.getSubNodeNames())) {
+            _cursor.remove(name);
+        }
+        ArborianQuests.getSaveQueue().markDirty(_cursor);
+    }
+
+    // verify written quests, then copy the next batch of players
+    private void runBatch() {
+
+        int remaining = _batchSize;
+
+        while (remaining > 0 && !_verifications.isEmpty()) {
+            remaining -= verifyBatch(_verifications.peek(), remaining);
+        }
+
+        if (remaining > 0 && !_isCopied)
+            copyBatch(remaining);
+
+        if (_isCopied && _pendingCommits == 0 && _verifications.isEmpty() && isRunning()) {
+
+            _cursor.set("complete", true);
+            stop();
+
+            Msg.info("Quest progress migration to {0} complete. {1} players migrated, {2} failures.",
+                    _target, getMigratedPlayers(), getFailures().size());
+        }
+    }
+
+    // copy players and advance the cursor once the copies are written
+    private void copyBatch(int max) {
+
+        final Batch batch = new Batch(++_batchSequence);
+        int remaining = max;
+
+        while (remaining > 0) {
+
+            if (_current == null && !nextQuest()) {
+                _isCopied = true;
+                break;
+            }
+
+            int end = Math.min(_playerNames.size(), _offset + remaining);
+            batch.migrated += copyRange(_offset, end, batch);
+
+            if (_targetStore instanceof MemoryProgressStore
+                    && ((MemoryProgressStore) _targetStore).isLoadFailed()) {
+
+                // the batch is not committed so the cursor does not move past it
+                Msg.severe("Quest progress migration stopped. The {0} progress of quest '{1}' " +
+                        "could not be loaded.", _target, _current.getPathName());
+                stop();
+                return;
+            }
+
+            remaining -= end - _offset;
+            _offset = end;
+
+            if (_offset >= _playerNames.size()) {
+
+                batch.copiedQuests.add(_current);
+                release(_targetStore);
+
+                _current = null;
+                _source = null;
+                _targetStore = null;
+                _playerNames = null;
+                _offset = 0;
+            }
+        }
+
+        batch.quest = _current != null ? _current.getPathName() : null;
+        batch.offset = _offset;
+
+        _pendingCommits++;
+
+        ArborianQuests.getSaveQueue().whenCommitted(new Runnable() {
+            @Override
+            public void run() {
+                onCommitted(batch);
+            }
+        });
+    }
+
+    // invoked once a batch has been written to the target
+    private void onCommitted(Batch batch) {
+
+        _pendingCommits--;
+
+        for (UUID playerId : batch.loadedShards) {
+            _storage.getShards().release(playerId);
+        }
+
+        // replaced by a newer migration that uses the same cursor
+        if (_storage.getMigration() != this)
+            return;
+
+        _cursor.set("migrated", getMigratedPlayers() + batch.migrated);
+
+        // commits that were retried can complete out of order
+        if (batch.sequence > _committedSequence) {
+            _committedSequence = batch.sequence;
+
+            if (batch.quest != null)
+                _cursor.set("quest", batch.quest);
+            else
+                _cursor.remove("quest");
+
+            _cursor.set("offset", batch.offset);
+        }
+
+        ArborianQuests.getSaveQueue().markDirty(_cursor);
+
+        for (Quest quest : batch.copiedQuests) {
+            _verifications.add(new Verification(quest));
+        }
+    }
+
+    // copy players in the current quest
+    private int copyRange(int start, int end, Batch batch) {
+
+        int copied = 0;
+
+        for (int i = start; i < end; i++) {
+
+            String name = _playerNames.get(i);
+            UUID playerId = TextUtils.parseUUID(name);
+            if (playerId == null)
+                continue;
+
+            IDataNode playerNode = _source.getNode(name);
+
+            //noinspection ConstantConditions
+            QuestStatus status = playerNode.getEnum("status", QuestStatus.NONE, QuestStatus.class);
+            String objective = playerNode.getString("assignment");
+            long accepted = playerNode.getLong("accepted", -1);
+            getSourceFlags(playerNode, _flags);
+
+            if (isShardUnloaded(playerId))
+                batch.loadedShards.add(playerId);
+
+            _targetStore.clearPlayer(playerId);
+
+            if (status != QuestStatus.NONE)
+                _targetStore.setStatus(playerId, status);
+
+            for (String flagName : _flags) {
+                _targetStore.setFlag(playerId, flagName);
+            }
+
+            if (objective != null)
+                _targetStore.setObjective(playerId, objective);
+
+            if (accepted >= 0)
+                _targetStore.setAcceptedTime(playerId, accepted);
+
+            copied++;
+        }
+
+        return copied;
+    }
+
+    // compare the next batch of source records to the written copy
+    private int verifyBatch(Verification verification, int max) {
+
+        // the store is created after the copy is written so it loads the written copy
+        if (verification.store == null)
+            verification.store = _storage.createStore(verification.quest, _target);
+
+        int start = verification.offset;
+        int end = Math.min(verification.playerNames.size(), start + max);
+
+        _sourceCrc.reset();
+        _targetCrc.reset();
+        _loadedShards.clear();
+
+        for (int i = start; i < end; i++) {
+
+            String name = verification.playerNames.get(i);
+            UUID playerId = TextUtils.parseUUID(name);
+            if (playerId == null)
+                continue;
+
+            IDataNode playerNode = verification.source.getNode(name);
+
+            //noinspection ConstantConditions
+            updateChecksum(_sourceCrc, playerId,
+                    playerNode.getEnum("status", QuestStatus.NONE, QuestStatus.class),
+                    playerNode.getString("assignment"),
+                    playerNode.getLong("accepted", -1),
+                    getSourceFlags(playerNode, _flags));
+
+            if (isShardUnloaded(playerId))
+                _loadedShards.add(playerId);
+
+            IQuestProgressStore store = verification.store;
+
+            _flags.clear();
+            updateChecksum(_targetCrc, playerId, store.getStatus(playerId),
+                    store.getObjective(playerId), store.getAcceptedTime(playerId),
+                    store.getFlags(playerId, _flags));
+        }
+
+        for (UUID playerId : _loadedShards) {
+            _storage.getShards().release(playerId);
+        }
+
+        if (_sourceCrc.getValue() != _targetCrc.getValue()) {
+
+            String failure = verification.quest.getPathName() + " [" + start + '-' + end + ']';
+
+            List<String> failed = getFailures();
+            failed.add(failure);
+            _cursor.set("failed", failed);
+
+            Msg.warning("Quest progress migration checksum mismatch: {0}", failure);
+        }
+
+        verification.offset = end;
+
+        if (end >= verification.playerNames.size()) {
+
+            _verifications.poll();
+            release(verification.store);
+
+            List<String> completed = _cursor.getStringList("completed", new ArrayList<String>(1));
+            completed.add(verification.quest.getPathName());
+            _cursor.set("completed", completed);
+
+            _completedQuests++;
+        }
+
+        ArborianQuests.getSaveQueue().markDirty(_cursor);
+
+        return end - start;
+    }
+
+    // set the next quest as current
+    private boolean nextQuest() {
+
+        _current = _queue.poll();
+        if (_current == null)
+            return false;
+
+        _source = _current.getDataNode().getNode("players");
+        _targetStore = _storage.createStore(_current, _target);
+        _playerNames = getPlayerNames(_source);
+
+        // resume an interrupted quest
+        _offset = _current.getPathName().equals(_cursor.getString("quest"))
+                ? Math.min(_cursor.getInteger("offset", 0), _playerNames.size())
+                : 0;
+
+        return true;
+    }
+
+    // determine if copying or verifying a player loads the players shard
+    private boolean isShardUnloaded(UUID playerId) {
+        return _target == ProgressStorageMode.PLAYER
+                && _storage.getShards().getLoadedShard(playerId) == null;
+    }
+
+    // remove a target store that is no longer used
+    private void release(IQuestProgressStore store) {
+        if (store instanceof ShardedProgressStore)
+            _storage.getShards().unregister((ShardedProgressStore) store);
+    }
+
+    private static List<String> getPlayerNames(IDataNode source) {
+
+        // sorted so the offset is stable across restarts
+        List<String> names = new ArrayList<>(source.getSubNodeNames());
+        Collections.sort(names);
+
+        return names;
+    }
+
+    private static List<String> getSourceFlags(IDataNode playerNode, List<String> output) {
+
+        output.clear();
+
+        IDataNode flagNodes = playerNode.getNode("flags");
+        for (String flagName : flagNodes.getSubNodeNames()) {
+            if (flagNodes.getBoolean(flagName, false))
+                output.add(flagName);
+        }
+
+        return output;
+    }
+
+    private static void addQuests(Quest quest, List<Quest> output) {
+        output.add(quest);
+
+        for (Quest subQuest : quest.getQuests()) {
+            addQuests(subQuest, output);
+        }
+    }
+
+    private static void updateChecksum(CRC32 crc, UUID playerId, QuestStatus status,
+                                       @Nullable String objective, long accepted,
+                                       List<String> flags) {
+
+        crc.update(playerId.toString().getBytes(StandardCharsets.UTF_8));
+        crc.update(status.ordinal());
+
+        if (objective != null)
+            crc.update(objective.getBytes(StandardCharsets.UTF_8));
+
+        crc.update(0);
+
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int)(accepted >>> shift));
+        }
+
+        // stores do not preserve flag order
+        Collections.sort(flags);
+
+        for (String flagName : flags) {
+            crc.update(flagName.getBytes(StandardCharsets.UTF_8));
+            crc.update(0);
+        }
+    }
+
+    /*
+     * Position and results of a copied batch, applied to the
+     * cursor once the batch is written.
+     */
+    private static class Batch {
+
+        final int sequence;
+        final List<Quest> copiedQuests = new ArrayList<>(1);
+        final List<UUID> loadedShards = new ArrayList<>(0);
+        String quest;
+        int offset;
+        int migrated;
+
+        Batch(int sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /*
+     * Verification position of a quest whose copy is written.
+     */
+    private static class Verification {
+
+        final Quest quest;
+        final IDataNode source;
+        final List<String> playerNames;
+        IQuestProgressStore store;
+        int offset;
+
+        Verification(Quest quest) {
+            this.quest = quest;
+            this.source = quest.getDataNode().getNode("players");
+            this.playerNames = getPlayerNames(source);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+import com.jcwhatever.arborianquests.ArborianQuests;
+import com.jcwhatever.arborianquests.quests.Quest;
+import com.jcwhatever.nucleus.mixins.IDisposable;
+import com.jcwhatever.nucleus.mixins.IPluginOwned;
+import com.jcwhatever.nucleus.storage.IDataNode;
+import com.jcwhatever.nucleus.utils.PreCon;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import javax.annotation.Nullable;
+
+/**
+ * Creates {@link IQuestProgressStore}'s for quests using the
+ * configured {@link ProgressStorageMode}.
+ */
+public class ProgressStorage implements IPluginOwned, IDisposable {
+
+    private final Plugin _plugin;
+    private final ProgressStorageMode _mode;
+    private final PlayerShards _shards;
+    private final File _binaryFolder;
+    private final int _journalCompactThreshold;
+    private final boolean _isDurable;
+    private final boolean _isFlagIndexed;
+    private final SqlProgressDatabase _database;
+    private final int _migrateBatchSize;
+
+    private ProgressMigration _migration;
+    private IDataNode _cursor;
+
+    private boolean _isDisposed;
+
+    /**
+     * Constructor.
+     *
+     * @param plugin    The owning plugin.
+     * @param settings  The data node to read storage settings from.
+     */
+    public ProgressStorage(Plugin plugin, IDataNode settings) {
+        PreCon.notNull(plugin);
+        PreCon.notNull(settings);
+
+        _plugin = plugin;
+
+        //noinspection ConstantConditions
+        _mode = settings.getEnum("progress-storage", ProgressStorageMode.QUEST, ProgressStorageMode.class);
+        _shards = new PlayerShards(plugin, settings.getInteger("progress-unload-delay-ticks", 6000));
+        _binaryFolder = new File(plugin.getDataFolder(), "progress");
+        _journalCompactThreshold = settings.getInteger("journal-compact-records", 1000);
+        _isDurable = settings.getBoolean("group-commit", false);
+
+        // shards are not all resident so their flags cannot be indexed
+        _isFlagIndexed = settings.getBoolean("flag-index", true) && _mode != ProgressStorageMode.PLAYER;
+        _database = new SqlProgressDatabase(new File(plugin.getDataFolder(), "progress.db"));
+        _migrateBatchSize = settings.getInteger("migrate-batch-size", 200);
+    }
+
+    @Override
+    public Plugin getPlugin() {
+        return _plugin;
+    }
+
+    /**
+     * Get the storage mode.
+     */
+    public ProgressStorageMode getMode() {
+        return _mode;
+    }
+
+    /**
+     * Determine if progress files are written durably.
+     *
+     * <p>When enabled using the "group-commit" setting, progress files are replaced
+     * atomically and synced to disk once per save interval.</p>
+     */
+    public boolean isDurable() {
+        return _isDurable;
+    }
+
+    /**
+     * Determine if quests keep an index of the players that have each flag set.
+     *
+     * <p>Enabled using the "flag-index" setting. Not available in the
+     * {@link ProgressStorageMode#PLAYER} mode.</p>
+     */
+    public boolean isFlagIndexed() {
+        return _isFlagIndexed;
+    }
+
+    /**
+     * Get the per-player shards used by the {@link ProgressStorageMode#PLAYER} mode.
+     */
+    public PlayerShards getShards() {
+        return _shards;
+    }
+
+    /**
+     * Get the current progress migration.
+     *
+     * @return  The migration or null if a migration has not been started
+     * during the server session.
+     */
+    @Nullable
+    public ProgressMigration getMigration() {
+        return _migration;
+    }
+
+    /**
+     * Start or resume migrating player progress from the "players" node of
+     * each quests data node to another storage mode.
+     *
+     * <p>A migration that was interrupted is resumed unless it was for
+     * a different mode or a restart is requested. The target cannot be the current
+     * storage mode since the migration would write to the files used by the
+     * quests live stores.</p>
+     *
+     * @param quests   The primary quests to migrate.
+     * @param target   The storage mode to migrate to.
+     * @param restart  True to discard a previous migrations position.
+     *
+     * @return  The migration.
+     */
+    public ProgressMigration migrate(Collection<? extends Quest> quests,
+                                     ProgressStorageMode target, boolean restart) {
+        PreCon.notNull(quests);
+        PreCon.notNull(target);
+        PreCon.isValid(_migration == null || !_migration.isRunning(), "A migration is already running.");
+        PreCon.isValid(target != _mode, "Cannot migrate to the current storage mode.");
+
+        // the cursor is only loaded once since its writes may still be pending
+        if (_cursor == null) {
+            _cursor = ArborianQuests.getSaveQueue().getDataNode(_plugin, "migration");
+            _cursor.load();
+        }
+
+        if (restart) {
+            for (String name : new ArrayList<>(_cursor.getSubNodeNames())) {
+                _cursor.remove(name);
+            }
+        }
+
+        _migration = new ProgressMigration(_plugin, this, target, _migrateBatchSize, _cursor, quests);
+        _migration.start();
+
+        return _migration;
+    }
+
+    /**
+     * Create a progress store for a quest.
+     *
+     * <p>Invoked from the quests constructor. The quests data node must
+     * already be set.</p>
+     *
+     * @param quest  The quest.
+     */
+    public IQuestProgressStore createStore(Quest quest) {
+        return createStore(quest, _mode);
+    }
+
+    /**
+     * Create a progress store for a quest using the specified mode.
+     *
+     * @param quest  The quest.
+     * @param mode   The storage mode.
+     */
+    public IQuestProgressStore createStore(Quest quest, ProgressStorageMode mode) {
+        PreCon.notNull(quest);
+        PreCon.notNull(mode);
+
+        switch (mode) {
+            case QUEST:
+                return new DataNodeProgressStore(quest.getDataNode().getNode("players"));
+
+            case PLAYER:
+                return new ShardedProgressStore(_shards, quest);
+
+            case BINARY:
+                return new BinaryProgressStore(_binaryFolder, quest, _isDurable);
+
+            case JOURNAL:
+                return new JournalProgressStore(_binaryFolder, quest, _journalCompactThreshold, _isDurable);
+
+            case SQL:
+                return new SqlProgressStore(_database, quest);
+
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return _isDisposed;
+    }
+
+    /**
+     * Close the progress database.
+     *
+     * <p>Invoked after pending saves have been written.</p>
+     */
+    @Override
+    public void dispose() {
+
+        if (_isDisposed)
+            return;
+
+        _isDisposed = true;
+
+        if (_migration != null)
+            _migration.stop();
+
+        _database.dispose();
+    }
+}
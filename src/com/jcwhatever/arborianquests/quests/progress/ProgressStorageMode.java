@@ -0,0 +1,56 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+/**
+ * Specifies where player quest progress is stored.
+ */
+public enum ProgressStorageMode {
+    /**
+     * Progress is stored in the "players" node of each quests data file.
+     */
+    QUEST,
+    /**
+     * Progress is stored in a data file per player which holds the
+     * players progress in every quest.
+     */
+    PLAYER,
+    /**
+     * Progress is kept in memory and stored in a compact binary file
+     * per quest with interned flag names.
+     */
+    BINARY,
+    /**
+     * Same as {@link #BINARY} except that changes are appended to a journal
+     * file per quest. The journal is periodically folded back into the binary
+     * file in the background.
+     */
+    JOURNAL,
+    /**
+     * Progress is kept in memory and stored in an embedded SQL database
+     * with indexed tables. Only changed players are written.
+     */
+    SQL
+}
@@ -0,0 +1,298 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+import com.jcwhatever.arborianquests.ArborianQuests;
+import com.jcwhatever.arborianquests.quests.Quest;
+import com.jcwhatever.arborianquests.quests.QuestStatus;
+import com.jcwhatever.nucleus.storage.IDataNode;
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/**
+ * Stores player progress in per-player shards.
+ *
+ * <p>Each quest is stored as a single node in the players shard. The node is named
+ * using the quests path with the dot delimiters replaced so that sub quest progress
+ * is not nested inside of the parent quests progress.</p>
+ *
+ * <p>The players of the quest and their statuses are read from the roster kept by
+ * {@link PlayerShards}, so they include offline players and do not load shards.
+ * Finding the players that have a flag set loads the shards of offline players in
+ * the roster and unloads them again.</p>
+ *
+ * <p>Flag nodes are cached by player ID while the players shard is loaded. The
+ * cache is cleared when the shard is unloaded.</p>
+ */
+public class ShardedProgressStore implements IQuestProgressStore {
+
+    private final PlayerShards _shards;
+    private final Quest _quest;
+    private final Map<UUID, IDataNode> _flagNodes = new HashMap<>(50);
+    private String _key;
+    private Map<UUID, QuestStatus> _roster;
+
+    /**
+     * Constructor.
+     *
+     * @param shards  The player shards.
+     * @param quest   The quest the store is for.
+     */
+    public ShardedProgressStore(PlayerShards shards, Quest quest) {
+        PreCon.notNull(shards);
+        PreCon.notNull(quest);
+
+        _shards = shards;
+        _quest = quest;
+
+        shards.register(this);
+    }
+
+    @Override
+    public QuestStatus getStatus(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        QuestStatus status = getRoster().get(playerId);
+        return status != null ? status : QuestStatus.NONE;
+    }
+
+    @Override
+    public void setStatus(UUID playerId, QuestStatus status) {
+        PreCon.notNull(playerId);
+        PreCon.notNull(status);
+
+        if (status == QuestStatus.NONE) {
+            clearPlayer(playerId);
+            return;
+        }
+
+        getNode(playerId).set("status", status);
+        _shards.setRosterStatus(getKey(), playerId, status);
+        markDirty(playerId);
+    }
+
+    @Override
+    public boolean hasFlag(UUID playerId, String flagName) {
+        PreCon.notNull(playerId);
+        PreCon.notNullOrEmpty(flagName);
+
+        return hasPlayer(playerId) && getFlagNode(playerId).getBoolean(flagName, false);
+    }
+
+    @Override
+    public void setFlag(UUID playerId, String flagName) {
+        PreCon.notNull(playerId);
+        PreCon.notNullOrEmpty(flagName);
+
+        getFlagNode(playerId).set(flagName, true);
+        addToRoster(playerId);
+        markDirty(playerId);
+    }
+
+    @Override
+    public void clearFlag(UUID playerId, String flagName) {
+        PreCon.notNull(playerId);
+        PreCon.notNullOrEmpty(flagName);
+
+        if (!hasPlayer(playerId))
+            return;
+
+        getFlagNode(playerId).remove(flagName);
+        markDirty(playerId);
+    }
+
+    @Override
+    public <T extends Collection<String>> T getFlags(UUID playerId, T output) {
+        PreCon.notNull(playerId);
+        PreCon.notNull(output);
+
+        if (!hasPlayer(playerId))
+            return output;
+
+        return getFlagNode(playerId).getSubNodeNames(output);
+    }
+
+    @Nullable
+    @Override
+    public String getObjective(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        if (!hasPlayer(playerId))
+            return null;
+
+        return getNode(playerId).getString("assignment");
+    }
+
+    @Override
+    public void setObjective(UUID playerId, @Nullable String assignmentKey) {
+        PreCon.notNull(playerId);
+
+        if (assignmentKey == null && !hasPlayer(playerId))
+            return;
+
+        getNode(playerId).set("assignment", assignmentKey);
+        addToRoster(playerId);
+        markDirty(playerId);
+    }
+
+    @Override
+    public long getAcceptedTime(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        if (!hasPlayer(playerId))
+            return -1;
+
+        return getNode(playerId).getLong("accepted", -1);
+    }
+
+    @Override
+    public void setAcceptedTime(UUID playerId, long time) {
+        PreCon.notNull(playerId);
+
+        if (time < 0 && !hasPlayer(playerId))
+            return;
+
+        getNode(playerId).set("accepted", time < 0 ? null : time);
+        addToRoster(playerId);
+        markDirty(playerId);
+    }
+
+    @Override
+    public boolean hasPlayer(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        return getRoster().containsKey(playerId);
+    }
+
+    @Override
+    public <T extends Collection<UUID>> T getPlayers(T output) {
+        PreCon.notNull(output);
+
+        output.addAll(getRoster().keySet());
+        return output;
+    }
+
+    @Override
+    public Iterator<UUID> getPlayerIterator() {
+        return Collections.unmodifiableSet(getRoster().keySet()).iterator();
+    }
+
+    @Override
+    public <T extends Collection<UUID>> T getPlayersWithFlag(String flagName, T output) {
+        PreCon.notNullOrEmpty(flagName);
+        PreCon.notNull(output);
+
+        List<UUID> players = new ArrayList<>(getRoster().keySet());
+        String flagPath = getKey() + ".flags." + flagName;
+
+        for (UUID playerId : players) {
+
+            IDataNode shard = _shards.getLoadedShard(playerId);
+            boolean isLoaded = shard != null;
+
+            if (!isLoaded)
+                shard = _shards.getShard(playerId);
+
+            if (shard.getBoolean(flagPath, false))
+                output.add(playerId);
+
+            // do not keep the shards of offline players resident
+            if (!isLoaded)
+                _shards.release(playerId);
+        }
+
+        return output;
+    }
+
+    @Override
+    public void clearPlayer(UUID playerId) {
+        PreCon.notNull(playerId);
+
+        if (!hasPlayer(playerId))
+            return;
+
+        _shards.getShard(playerId).remove(getKey());
+        _shards.removeFromRoster(getKey(), playerId);
+        _flagNodes.remove(playerId);
+        markDirty(playerId);
+    }
+
+    /*
+     * Invoked by the player shards when a players shard is unloaded.
+     */
+    void onShardUnloaded(UUID playerId) {
+        _flagNodes.remove(playerId);
+    }
+
+    private IDataNode getNode(UUID playerId) {
+        return _shards.getShard(playerId).getNode(getKey());
+    }
+
+    private IDataNode getFlagNode(UUID playerId) {
+
+        IDataNode flagNode = _flagNodes.get(playerId);
+        if (flagNode == null) {
+            flagNode = getNode(playerId).getNode("flags");
+            _flagNodes.put(playerId, flagNode);
+        }
+
+        return flagNode;
+    }
+
+    // add a player without a status to the roster after their progress is changed
+    private void addToRoster(UUID playerId) {
+        if (!hasPlayer(playerId))
+            _shards.setRosterStatus(getKey(), playerId, QuestStatus.NONE);
+    }
+
+    private void markDirty(UUID playerId) {
+        ArborianQuests.getSaveQueue().markDirty(_shards.getShard(playerId));
+    }
+
+    private Map<UUID, QuestStatus> getRoster() {
+        if (_roster == null)
+            _roster = _shards.getRoster(getKey());
+
+        return _roster;
+    }
+
+    // The quest path can only be resolved once the quest is fully
+    // constructed so the key is resolved on first use.
+    private String getKey() {
+        if (_key == null)
+            _key = _quest.getPathName().replace('.', '/');
+
+        return _key;
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+import com.jcwhatever.nucleus.mixins.IDisposable;
+import com.jcwhatever.nucleus.utils.PreCon;
+import com.jcwhatever.nucleus.utils.text.TextUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/**
+ * Embedded SQLite database used by {@link SqlProgressStore}'s.
+ *
+ * <p>Progress is stored in two tables keyed by quest path and player ID, with an
+ * additional index on flags so that finding the players that have a flag is an
+ * indexed lookup.</p>
+ *
+ * <p>The connection is shared by the main thread, which reads when a store is loaded,
+ * and the background writer. Access to the connection is synchronized.</p>
+ */
+public class SqlProgressDatabase implements IDisposable {
+
+    private static final String[] SCHEMA = new String[] {
+            "CREATE TABLE IF NOT EXISTS quest_progress (" +
+                    "quest TEXT NOT NULL, player TEXT NOT NULL, " +
+                    "status INTEGER NOT NULL, objective TEXT, accepted INTEGER NOT NULL DEFAULT -1, " +
+                    "PRIMARY KEY (quest, player))",
+
+            "CREATE TABLE IF NOT EXISTS quest_flags (" +
+                    "quest TEXT NOT NULL, player TEXT NOT NULL, flag TEXT NOT NULL, " +
+                    "PRIMARY KEY (quest, player, flag))",
+
+            "CREATE INDEX IF NOT EXISTS quest_flags_by_flag ON quest_flags (quest, flag)"
+    };
+
+    private static final String SELECT_PROGRESS =
+            "SELECT player, status, objective, accepted FROM quest_progress WHERE quest = ?";
+
+    // databases created before accepted times were stored
+    private static final String SELECT_COLUMNS = "PRAGMA table_info(quest_progress)";
+
+    private static final String ADD_ACCEPTED =
+            "ALTER TABLE quest_progress ADD COLUMN accepted INTEGER NOT NULL DEFAULT -1";
+
+    private static final String SELECT_FLAGS =
+            "SELECT player, flag FROM quest_flags WHERE quest = ?";
+
+    private static final String SELECT_PLAYERS_WITH_FLAG =
+            "SELECT player FROM quest_flags WHERE quest = ? AND flag = ?";
+
+    private static final String REPLACE_PROGRESS =
+            "INSERT OR REPLACE INTO quest_progress (quest, player, status, objective, accepted) " +
+                    "VALUES (?, ?, ?, ?, ?)";
+
+    private static final String DELETE_PROGRESS =
+            "DELETE FROM quest_progress WHERE quest = ? AND player = ?";
+
+    private static final String INSERT_FLAG =
+            "INSERT INTO quest_flags (quest, player, flag) VALUES (?, ?, ?)";
+
+    private static final String DELETE_FLAGS =
+            "DELETE FROM quest_flags WHERE quest = ? AND player = ?";
+
+    private final File _file;
+    private Connection _connection;
+    private boolean _isDisposed;
+
+    /**
+     * Constructor.
+     *
+     * @param file  The database file.
+     */
+    public SqlProgressDatabase(File file) {
+        PreCon.notNull(file);
+
+        _file = file;
+    }
+
+    /**
+     * Get the database file.
+     */
+    public File getFile() {
+        return _file;
+    }
+
+    /**
+     * Load the progress of all players in a quest.
+     *
+     * @param questPath  The path of the quest.
+     * @param flagIds    The flag ID table to intern flag names into.
+     *
+     * @return  The players progress, keyed by player ID.
+     *
+     * @throws SQLException
+     * @throws IOException if a stored status is invalid.
+     */
+    synchronized Map<UUID, PlayerProgress> load(String questPath, FlagIdTable flagIds)
+            throws SQLException, IOException {
+
+        Map<UUID, PlayerProgress> result = new HashMap<>(50);
+        Connection connection = getConnection();
+
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_PROGRESS)) {
+
+            statement.setString(1, questPath);
+
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+
+                    UUID playerId = TextUtils.parseUUID(rows.getString(1));
+                    if (playerId == null)
+                        continue;
+
+                    result.put(playerId, new PlayerProgress(
+                            PlayerProgress.checkStatus(rows.getInt(2)), new BitSet(),
+                            rows.getString(3), rows.getLong(4)));
+                }
+            }
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_FLAGS)) {
+
+            statement.setString(1, questPath);
+
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+
+                    UUID playerId = TextUtils.parseUUID(rows.getString(1));
+                    if (playerId == null)
+                        continue;
+
+                    PlayerProgress progress = result.get(playerId);
+                    if (progress != null)
+                        progress.flags.set(flagIds.intern(rows.getString(2)));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the ID's of players that have a flag set in a quest
+     * using the flag index.
+     *
+     * @param questPath  The path of the quest.
+     * @param flagName   The name of the flag.
+     * @param output     The output collection to add the player ID's to.
+     *
+     * @return  The output collection.
+     *
+     * @throws SQLException
+     */
+    synchronized <T extends Collection<UUID>> T getPlayersWithFlag(
+            String questPath, String flagName, T output) throws SQLException {
+
+        try (PreparedStatement statement = getConnection().prepareStatement(SELECT_PLAYERS_WITH_FLAG)) {
+
+            statement.setString(1, questPath);
+            statement.setString(2, flagName);
+
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    UUID playerId = TextUtils.parseUUID(rows.getString(1));
+                    if (playerId != null)
+                        output.add(playerId);
+                }
+            }
+        }
+
+        return output;
+    }
+
+    /**
+     * Write changed player rows in a single transaction using
+     * batched statements.
+     *
+     * @param questPath  The path of the quest.
+     * @param rows       The changed players.
+     *
+     * @throws IOException
+     */
+    synchronized void write(String questPath, List<Row> rows) throws IOException {
+
+        if (rows.isEmpty())
+            return;
+
+        try {
+            Connection connection = getConnection();
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement replaceProgress = connection.prepareStatement(REPLACE_PROGRESS);
+                 PreparedStatement deleteProgress = connection.prepareStatement(DELETE_PROGRESS);
+                 PreparedStatement deleteFlags = connection.prepareStatement(DELETE_FLAGS);
+                 PreparedStatement insertFlag = connection.prepareStatement(INSERT_FLAG)) {
+
+                for (Row row : rows) {
+
+                    String playerId = row.playerId.toString();
+
+                    deleteFlags.setString(1, questPath);
+                    deleteFlags.setString(2, playerId);
+                    deleteFlags.addBatch();
+
+                    if (row.isRemoved()) {
+                        deleteProgress.setString(1, questPath);
+                        deleteProgress.setString(2, playerId);
+                        deleteProgress.addBatch();
+                        continue;
+                    }
+
+                    replaceProgress.setString(1, questPath);
+                    replaceProgress.setString(2, playerId);
+                    replaceProgress.setInt(3, row.status);
+                    replaceProgress.setString(4, row.objective);
+                    replaceProgress.setLong(5, row.accepted);
+                    replaceProgress.addBatch();
+
+                    for (String flagName : row.flags) {
+                        insertFlag.setString(1, questPath);
+                        insertFlag.setString(2, playerId);
+                        insertFlag.setString(3, flagName);
+                        insertFlag.addBatch();
+                    }
+                }
+
+                // flags are deleted before they are re-inserted
+                deleteFlags.executeBatch();
+                deleteProgress.executeBatch();
+                replaceProgress.executeBatch();
+                insertFlag.executeBatch();
+
+                connection.commit();
+            }
+            catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        catch (SQLException e) {
+            throw new IOException("Failed to write quest progress to database.", e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isDisposed() {
+        return _isDisposed;
+    }
+
+    @Override
+    public synchronized void dispose() {
+
+        if (_isDisposed)
+            return;
+
+        _isDisposed = true;
+
+        if (_connection == null)
+            return;
+
+        try {
+            _connection.close();
+        }
+        catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        _connection = null;
+    }
+
+    // get the connection, opening the database if needed
+    private Connection getConnection() throws SQLException {
+
+        if (_isDisposed)
+            throw new SQLException("The progress database is disposed.");
+
+        if (_connection != null)
+            return _connection;
+
+        File folder = _file.getParentFile();
+        if (!folder.exists() && !folder.mkdirs())
+            throw new SQLException("Failed to create folder: " + folder);
+
+        try {
+            // older drivers do not register themselves
+            Class.forName("org.sqlite.JDBC");
+        }
+        catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite driver not found.", e);
+        }
+
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + _file.getAbsolutePath());
+
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : SCHEMA) {
+                statement.executeUpdate(sql);
+            }
+
+            if (!hasColumn(statement, "accepted"))
+                statement.executeUpdate(ADD_ACCEPTED);
+        }
+
+        _connection = connection;
+        return connection;
+    }
+
+    private static boolean hasColumn(Statement statement, String column) throws SQLException {
+
+        try (ResultSet columns = statement.executeQuery(SELECT_COLUMNS)) {
+            while (columns.next()) {
+                if (column.equals(columns.getString("name")))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Immutable copy of a players progress to write.
+     */
+    static class Row {
+
+        final UUID playerId;
+        final byte status;
+        final String objective;
+        final long accepted;
+        final String[] flags;
+
+        /**
+         * Constructor.
+         *
+         * @param playerId   The ID of the player.
+         * @param status     The players status ordinal or -1 if the players progress is removed.
+         * @param objective  The players objective key.
+         * @param accepted   The time the player accepted the quest or -1.
+         * @param flags      The names of the flags set on the player.
+         */
+        Row(UUID playerId, byte status, @Nullable String objective, long accepted, String[] flags) {
+            this.playerId = playerId;
+            this.status = status;
+            this.objective = objective;
+            this.accepted = accepted;
+            this.flags = flags;
+        }
+
+        boolean isRemoved() {
+            return status == -1;
+        }
+    }
+}
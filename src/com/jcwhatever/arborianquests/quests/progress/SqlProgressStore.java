@@ -0,0 +1,198 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.progress;
+
+import com.jcwhatever.arborianquests.Msg;
+import com.jcwhatever.arborianquests.quests.Quest;
+import com.jcwhatever.arborianquests.quests.progress.SqlProgressDatabase.Row;
+import com.jcwhatever.arborianquests.storage.ISaveSnapshot;
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Stores player progress in memory and persists it to an embedded
+ * SQL database.
+ *
+ * <p>Only the players that changed since the last save are written, using
+ * batched statements in a single transaction.</p>
+ *
+ * <p>Finding the players that have a flag uses the databases flag index
+ * if the store has not been loaded.</p>
+ */
+public class SqlProgressStore extends MemoryProgressStore {
+
+    private static final String[] EMPTY_FLAGS = new String[0];
+
+    private final SqlProgressDatabase _database;
+    private final Set<UUID> _dirtyPlayers = new LinkedHashSet<>(10);
+    private String _questPath;
+
+    /**
+     * Constructor.
+     *
+     * @param database  The progress database.
+     * @param quest     The quest the store is for.
+     */
+    public SqlProgressStore(SqlProgressDatabase database, Quest quest) {
+        super(quest);
+
+        PreCon.notNull(database);
+
+        _database = database;
+    }
+
+    @Override
+    public <T extends Collection<UUID>> T getPlayersWithFlag(String flagName, T output) {
+        PreCon.notNullOrEmpty(flagName);
+        PreCon.notNull(output);
+
+        // the in-memory model includes changes that are not written yet
+        if (isLoaded())
+            return super.getPlayersWithFlag(flagName, output);
+
+        try {
+            return _database.getPlayersWithFlag(getQuestPath(), flagName, output);
+        }
+        catch (SQLException e) {
+            Msg.severe("Failed to query quest progress database.");
+            e.printStackTrace();
+            return output;
+        }
+    }
+
+    @Override
+    public ISaveSnapshot snapshot() {
+
+        List<Row> rows = new ArrayList<>(_dirtyPlayers.size());
+        FlagIdTable flagIds = getFlagIds();
+        Map<UUID, PlayerProgress> players = getAllProgress();
+
+        for (UUID playerId : _dirtyPlayers) {
+
+            PlayerProgress progress = players.get(playerId);
+            if (progress == null) {
+                rows.add(new Row(playerId, (byte)-1, null, -1, EMPTY_FLAGS));
+                continue;
+            }
+
+            BitSet flags = progress.flags;
+            String[] flagNames = flags.isEmpty()
+                    ? EMPTY_FLAGS
+                    : new String[flags.cardinality()];
+
+            int i = 0;
+            for (int id = flags.nextSetBit(0); id >= 0; id = flags.nextSetBit(id + 1)) {
+                flagNames[i++] = flagIds.getName(id);
+            }
+
+            rows.add(new Row(playerId, progress.status, progress.objective, progress.accepted, flagNames));
+        }
+
+        _dirtyPlayers.clear();
+
+        return new SqlSnapshot(_database, getQuestPath(), rows);
+    }
+
+    @Override
+    public void onSnapshotFailed(ISaveSnapshot snapshot) {
+
+        // write the players in the failed transaction again
+        if (snapshot instanceof SqlSnapshot) {
+            for (Row row : ((SqlSnapshot) snapshot).rows) {
+                _dirtyPlayers.add(row.playerId);
+            }
+        }
+
+        markDirty();
+    }
+
+    @Override
+    protected void onChange(UUID playerId) {
+        _dirtyPlayers.add(playerId);
+        markDirty();
+    }
+
+    @Override
+    protected void onLoad() throws IOException {
+
+        try {
+            Map<UUID, PlayerProgress> players = _database.load(getQuestPath(), getFlagIds());
+
+            for (Entry<UUID, PlayerProgress> entry : players.entrySet()) {
+                putProgress(entry.getKey(), entry.getValue());
+            }
+        }
+        catch (SQLException e) {
+            Msg.severe("Failed to load quest progress from database: {0}", getQuestPath());
+            throw new IOException(e);
+        }
+    }
+
+    private String getQuestPath() {
+        if (_questPath == null)
+            _questPath = getQuest().getPathName();
+
+        return _questPath;
+    }
+
+    /*
+     * Writes changed players to the database.
+     */
+    private static class SqlSnapshot implements ISaveSnapshot {
+
+        final SqlProgressDatabase database;
+        final String questPath;
+        final List<Row> rows;
+
+        SqlSnapshot(SqlProgressDatabase database, String questPath, List<Row> rows) {
+            this.database = database;
+            this.questPath = questPath;
+            this.rows = rows;
+        }
+
+        @Override
+        public File getFile() {
+            // all stores share the database so all writes share a writer
+            return database.getFile();
+        }
+
+        @Override
+        public void write() throws IOException {
+            database.write(questPath, rows);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.query;
+
+import com.jcwhatever.arborianquests.quests.Quest;
+import com.jcwhatever.arborianquests.quests.QuestStatus.CurrentQuestStatus;
+import com.jcwhatever.arborianquests.quests.QuestStatus.QuestCompletionStatus;
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.util.Iterator;
+import java.util.UUID;
+
+/**
+ * Common progress query filters.
+ */
+public final class ProgressFilters {
+
+    private ProgressFilters() {}
+
+    private static final IProgressFilter COMPLETED = new QuestPlayerFilter() {
+        @Override
+        public boolean isMatch(Quest quest, UUID playerId) {
+            return quest.getStatus(playerId).getCompletionStatus() == QuestCompletionStatus.COMPLETED;
+        }
+    };
+
+    private static final IProgressFilter IN_PROGRESS = new QuestPlayerFilter() {
+        @Override
+        public boolean isMatch(Quest quest, UUID playerId) {
+            return quest.getStatus(playerId).getCurrentStatus() == CurrentQuestStatus.IN_PROGRESS;
+        }
+    };
+
+    private static final IProgressFilter IN_PROGRESS_SUB_QUEST = new IProgressFilter() {
+        @Override
+        public boolean isMatch(Quest quest, UUID playerId) {
+
+            for (Quest subQuest : quest.getQuests()) {
+                if (IN_PROGRESS.isMatch(subQuest, playerId) || isMatch(subQuest, playerId))
+                    return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Get a filter that matches players that have completed the quest.
+     */
+    public static IProgressFilter completed() {
+        return COMPLETED;
+    }
+
+    /**
+     * Get a filter that matches players that are currently in the quest.
+     */
+    public static IProgressFilter inProgress() {
+        return IN_PROGRESS;
+    }
+
+    /**
+     * Get a filter that matches players that are currently in any of
+     * the quests sub quests.
+     */
+    public static IProgressFilter inProgressSubQuest() {
+        return IN_PROGRESS_SUB_QUEST;
+    }
+
+    /**
+     * Get a filter that matches players that have a flag set in the quest.
+     *
+     * <p>Queries using the filter only check the players found using the quests
+     * flag index, or the progress store if the index is disabled.</p>
+     *
+     * @param flagName  The name of the flag.
+     */
+    public static IProgressFilter hasFlag(final String flagName) {
+        PreCon.notNullOrEmpty(flagName);
+
+        return new ICandidateFilter() {
+            @Override
+            public boolean isMatch(Quest quest, UUID playerId) {
+                return quest.hasFlag(playerId, flagName);
+            }
+
+            @Override
+            public Iterator<UUID> getCandidates(Quest quest) {
+                return quest.getFlagCandidates(flagName);
+            }
+        };
+    }
+
+    /*
+     * A filter that only matches players with progress in the queried quest.
+     */
+    private static abstract class QuestPlayerFilter implements ICandidateFilter {
+        @Override
+        public Iterator<UUID> getCandidates(Quest quest) {
+            return quest.getProgress().getPlayerIterator();
+        }
+    }
+}
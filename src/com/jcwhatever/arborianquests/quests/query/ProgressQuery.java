@@ -0,0 +1,275 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.quests.query;
+
+import com.jcwhatever.arborianquests.quests.Quest;
+import com.jcwhatever.nucleus.managed.scheduler.IScheduledTask;
+import com.jcwhatever.nucleus.managed.scheduler.Scheduler;
+import com.jcwhatever.nucleus.mixins.IPluginOwned;
+import com.jcwhatever.nucleus.utils.PreCon;
+import com.jcwhatever.nucleus.utils.observer.update.IUpdateSubscriber;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+/**
+ * Streams the ID's of players whose progress in a quest matches a filter.
+ *
+ * <p>Candidate players are iterated directly from the progress stores one quest at
+ * a time without copying them. Filters that can only match players of the queried
+ * quest, such as the filters from {@link ProgressFilters}, only use the quests own
+ * players or flag index. Other filters check the players of the quest and each of
+ * its sub quests, skipping players that were already found in a previous quest.</p>
+ *
+ * <p>Candidates are checked against the filter in fixed size chunks, one chunk per
+ * tick, and each match is passed to a subscriber as it is found. The matches are
+ * never collected. Looking a player up in a previous quest counts toward the chunk
+ * so the work per tick stays bounded. If the filter or the subscriber throws an
+ * exception, the query is stopped and the completion callback is invoked.</p>
+ *
+ * <p>Players are checked against their progress at the time they are reached.
+ * Players that join or leave a quest while it is being checked may or may not
+ * be checked.</p>
+ */
+public class ProgressQuery implements IPluginOwned {
+
+    private final Plugin _plugin;
+    private final Quest _quest;
+    private final IProgressFilter _filter;
+    private final int _chunkSize;
+    private final IUpdateSubscriber<UUID> _onMatch;
+    private final Runnable _onComplete;
+
+    private Quest[] _sources;
+    private int _sourceIndex;
+    private Iterator<UUID> _players = Collections.emptyIterator();
+    private int _checked;
+    private int _matches;
+    private IScheduledTask _task;
+    private boolean _isCancelled;
+    private boolean _isComplete;
+
+    /**
+     * Constructor.
+     *
+     * @param plugin      The owning plugin.
+     * @param quest       The quest to query.
+     * @param filter      The filter players must match.
+     * @param chunkSize   The number of players to check per tick.
+     * @param onMatch     Invoked with the ID of each matching player.
+     * @param onComplete  Optional. Invoked once all players are checked.
+     */
+    public ProgressQuery(Plugin plugin, Quest quest, IProgressFilter filter, int chunkSize,
+                         IUpdateSubscriber<UUID> onMatch, @Nullable Runnable onComplete) {
+        PreCon.notNull(plugin);
+        PreCon.notNull(quest);
+        PreCon.notNull(filter);
+        PreCon.greaterThanZero(chunkSize);
+        PreCon.notNull(onMatch);
+
+        _plugin = plugin;
+        _quest = quest;
+        _filter = filter;
+        _chunkSize = chunkSize;
+        _onMatch = onMatch;
+        _onComplete = onComplete;
+    }
+
+    @Override
+    public Plugin getPlugin() {
+        return _plugin;
+    }
+
+    /**
+     * Get the quest being queried.
+     */
+    public Quest getQuest() {
+        return _quest;
+    }
+
+    /**
+     * Get the number of players checked so far.
+     */
+    public int getChecked() {
+        return _checked;
+    }
+
+    /**
+     * Get the number of matching players found so far.
+     */
+    public int getMatches() {
+        return _matches;
+    }
+
+    /**
+     * Determine if the query is still running.
+     */
+    public boolean isRunning() {
+        return _task != null && !_isCancelled && !_isComplete;
+    }
+
+    /**
+     * Start the query.
+     *
+     * @return  Self for chaining.
+     */
+    public ProgressQuery start() {
+        PreCon.isValid(_sources == null, "Query already started.");
+
+        if (_filter instanceof ICandidateFilter) {
+            _sources = new Quest[] { _quest };
+        }
+        else {
+            List<Quest> quests = new ArrayList<>(10);
+            addQuests(_quest, quests);
+            _sources = quests.toArray(new Quest[quests.size()]);
+        }
+
+        _task = Scheduler.runTaskRepeat(_plugin, 1, 1, new Runnable() {
+            @Override
+            public void run() {
+                next();
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * Stop the query without invoking the completion callback.
+     */
+    public void cancel() {
+
+        if (_isCancelled)
+            return;
+
+        _isCancelled = true;
+
+        if (_task != null)
+            _task.cancel();
+    }
+
+    // check the next chunk of players
+    private void next() {
+
+        if (_isCancelled || _isComplete)
+            return;
+
+        try {
+            check(_chunkSize);
+        }
+        catch (RuntimeException e) {
+            e.printStackTrace();
+
+            if (!_isCancelled && !_isComplete)
+                complete();
+        }
+    }
+
+    // check up to the specified amount of players
+    private void check(int remaining) {
+
+        boolean isSourceLoaded = false;
+
+        while (remaining > 0) {
+
+            if (!_players.hasNext()) {
+
+                if (_sourceIndex >= _sources.length) {
+                    complete();
+                    return;
+                }
+
+                // start at most one quest per tick
+                if (isSourceLoaded)
+                    return;
+
+                loadSource(_sources[_sourceIndex++]);
+                isSourceLoaded = true;
+                continue;
+            }
+
+            UUID playerId = _players.next();
+            _checked++;
+            remaining--;
+
+            // look ups in previous quests count toward the chunk
+            int previous = getPreviousSource(playerId);
+            remaining -= previous == -1 ? _sourceIndex - 1 : previous + 1;
+
+            if (previous != -1 || !_filter.isMatch(_quest, playerId))
+                continue;
+
+            _matches++;
+            _onMatch.on(playerId);
+
+            if (_isCancelled)
+                return;
+        }
+    }
+
+    // start iterating the candidate players of a quest
+    private void loadSource(Quest quest) {
+
+        _players = _filter instanceof ICandidateFilter
+                ? ((ICandidateFilter) _filter).getCandidates(quest)
+                : quest.getProgress().getPlayerIterator();
+    }
+
+    // Get the index of a quest that was already checked that the player is a
+    // candidate of or -1 if the player was not a candidate in a previous quest.
+    private int getPreviousSource(UUID playerId) {
+
+        for (int i = 0; i < _sourceIndex - 1; i++) {
+            if (_sources[i].getProgress().hasPlayer(playerId))
+                return i;
+        }
+        return -1;
+    }
+
+    private void complete() {
+
+        _isComplete = true;
+        _players = Collections.emptyIterator();
+        _task.cancel();
+
+        if (_onComplete != null)
+            _onComplete.run();
+    }
+
+    private static void addQuests(Quest quest, List<Quest> output) {
+
+        output.add(quest);
+
+        for (Quest subQuest : quest.getQuests()) {
+            addQuests(subQuest, output);
+        }
+    }
+}
@@ -24,14 +24,26 @@
 
 package com.jcwhatever.arborianquests.scripting;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.jcwhatever.arborianquests.ArborianQuests;
 import com.jcwhatever.arborianquests.Lang;
 import com.jcwhatever.arborianquests.Msg;
 import com.jcwhatever.arborianquests.quests.Quest;
+import com.jcwhatever.arborianquests.quests.QuestManager;
+import com.jcwhatever.arborianquests.quests.QuestPath;
+import com.jcwhatever.arborianquests.quests.QuestStats;
 import com.jcwhatever.arborianquests.quests.QuestStatus;
 import com.jcwhatever.arborianquests.quests.QuestStatus.CurrentQuestStatus;
 import com.jcwhatever.arborianquests.quests.QuestStatus.QuestCompletionStatus;
 import com.jcwhatever.arborianquests.quests.SubQuest;
+import com.jcwhatever.arborianquests.quests.events.IQuestEventHandler;
+import com.jcwhatever.arborianquests.quests.events.QuestEventBus;
+import com.jcwhatever.arborianquests.quests.events.QuestEventType;
+import com.jcwhatever.arborianquests.quests.query.IProgressFilter;
+import com.jcwhatever.arborianquests.quests.query.ProgressFilters;
+import com.jcwhatever.arborianquests.quests.query.ProgressQuery;
 import com.jcwhatever.nucleus.collections.observer.subscriber.SubscriberArrayDeque;
 import com.jcwhatever.nucleus.managed.commands.response.IRequestContext;
 import com.jcwhatever.nucleus.managed.commands.response.ResponseRequestor;
@@ -49,9 +61,11 @@ import com.jcwhatever.nucleus.utils.text.format.args.HoverableArgModifier;
 import com.jcwhatever.nucleus.utils.text.format.args.TextArg;
 import org.bukkit.entity.Player;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
 import javax.annotation.Nullable;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Provide scripts with API for quests.
@@ -59,7 +73,11 @@ import java.util.Map;
 public class QuestsApi implements IDisposable {
 
     private static final SubscriberArrayDeque<IUpdateSubscriber> REQUESTS = new SubscriberArrayDeque<>(10);
-    private static final Map<String, Quest> PATH_CACHE = new HashMap<>(10);
+    private static final int PATH_CACHE_SIZE = 1000;
+    private static final Cache<String, Quest> PATH_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(PATH_CACHE_SIZE)
+            .recordStats()
+            .build();
 
     private static final TextArg ACCEPT_CLICK_ARG = new TextArg("{AQUA}Click here",
             new ClickableArgModifier(ClickAction.RUN_COMMAND, "/accept"),
@@ -95,21 +113,67 @@ public class QuestsApi implements IDisposable {
     public static Quest getQuest(String questPath, boolean isNullAllowed) {
         PreCon.notNullOrEmpty(questPath, "questPath");
 
-        Quest quest = PATH_CACHE.get(questPath);
+        // paths are matched case insensitive, only allocates if not already lower case
+        String key = QuestPath.toLowerCase(questPath);
+
+        Quest quest = PATH_CACHE.getIfPresent(key);
         if (quest != null)
             return quest;
 
-        quest = Quest.getQuestFromPath(questPath);
+        quest = Quest.getQuestFromPath(key);
         if (quest == null && isNullAllowed)
             return null;
 
         PreCon.isValid(quest != null, "Quest path '{0}' not found.", questPath);
 
-        PATH_CACHE.put(questPath, quest);
+        PATH_CACHE.put(key, quest);
 
         return quest;
     }
 
+    /**
+     * Get the hit and miss statistics of the quest path cache.
+     */
+    public static CacheStats getPathCacheStats() {
+        return PATH_CACHE.stats();
+    }
+
+    /**
+     * Invalidate cached quest paths when quests in the specified manager
+     * are created or removed.
+     *
+     * <p>Invoked when the plugin is enabled.</p>
+     *
+     * @param manager  The quest manager.
+     */
+    public static void bindPathCache(QuestManager manager) {
+        PreCon.notNull(manager, "manager");
+
+        PATH_CACHE.invalidateAll();
+
+        manager.onQuestCreate(new UpdateSubscriber<Quest>() {
+            @Override
+            public void on(Quest quest) {
+                PATH_CACHE.invalidate(quest.getPathName());
+            }
+        });
+
+        manager.onQuestRemove(new UpdateSubscriber<Quest>() {
+            @Override
+            public void on(Quest quest) {
+
+                String path = quest.getPathName();
+                String prefix = path + '.';
+
+                // remove the quest and its sub quests
+                for (String key : PATH_CACHE.asMap().keySet()) {
+                    if (key.equals(path) || key.startsWith(prefix))
+                        PATH_CACHE.invalidate(key);
+                }
+            }
+        });
+    }
+
     private boolean _isDisposed;
 
     public final IDisposable flags;
@@ -121,6 +185,9 @@ public class QuestsApi implements IDisposable {
     public final IDisposable dialogs;
     public final IDisposable npcClick;
 
+    private final List<ProgressQuery> _queries = new ArrayList<>(5);
+    private final List<EventHandler> _eventHandlers = new ArrayList<>(5);
+
     public QuestsApi() {
 
         flags = new Flags();
@@ -155,7 +222,19 @@ public class QuestsApi implements IDisposable {
         regions.dispose();
         npcClick.dispose();
 
-        PATH_CACHE.clear();
+        for (ProgressQuery query : _queries) {
+            query.cancel();
+        }
+        _queries.clear();
+
+        QuestEventBus eventBus = ArborianQuests.getQuestManager().getEventBus();
+        for (EventHandler handler : _eventHandlers) {
+            eventBus.removeHandler(handler.path, handler.type, handler.handler);
+        }
+        _eventHandlers.clear();
+
+        // the path cache is shared by all scripts and invalidated by quest changes
+        Msg.debug("Quest path cache: {0}", PATH_CACHE.stats());
 
         _isDisposed = true;
     }
@@ -331,6 +410,127 @@ public class QuestsApi implements IDisposable {
         return quest != null && quest.getStatus(p).getCompletionStatus() == QuestCompletionStatus.COMPLETED;
     }
 
+    /**
+     * Get the ID's of the players that have a flag set in a quest.
+     *
+     * <p>Includes offline players.</p>
+     *
+     * @param questPath  The path name of the quest.
+     * @param flagName   The name of the flag.
+     *
+     * @return  A new list of player ID's.
+     */
+    public List<UUID> getPlayersWithFlag(String questPath, String flagName) {
+        PreCon.notNullOrEmpty(questPath, "questPath");
+        PreCon.notNullOrEmpty(flagName, "flagName");
+
+        return getQuest(questPath, false).getPlayersWithFlag(flagName, new ArrayList<UUID>(25));
+    }
+
+    /**
+     * Stream the ID's of players that have completed a quest.
+     *
+     * <p>Players are checked in chunks across ticks. Includes offline players.</p>
+     *
+     * @param questPath   The path name of the quest.
+     * @param onMatch     Invoked with the ID of each matching player.
+     * @param onComplete  Optional. Invoked once all players are checked.
+     */
+    public ProgressQuery queryCompleted(String questPath, IUpdateSubscriber<UUID> onMatch,
+                                        @Nullable Runnable onComplete) {
+        return query(questPath, ProgressFilters.completed(), onMatch, onComplete);
+    }
+
+    /**
+     * Stream the ID's of players that are currently in a quest.
+     *
+     * <p>Players are checked in chunks across ticks. Includes offline players.</p>
+     *
+     * @param questPath   The path name of the quest.
+     * @param onMatch     Invoked with the ID of each matching player.
+     * @param onComplete  Optional. Invoked once all players are checked.
+     */
+    public ProgressQuery queryInProgress(String questPath, IUpdateSubscriber<UUID> onMatch,
+                                         @Nullable Runnable onComplete) {
+        return query(questPath, ProgressFilters.inProgress(), onMatch, onComplete);
+    }
+
+    /**
+     * Stream the ID's of players that are currently in any sub quest of a quest.
+     *
+     * <p>Players are checked in chunks across ticks. Includes offline players.</p>
+     *
+     * @param questPath   The path name of the parent quest.
+     * @param onMatch     Invoked with the ID of each matching player.
+     * @param onComplete  Optional. Invoked once all players are checked.
+     */
+    public ProgressQuery queryInProgressSubQuest(String questPath, IUpdateSubscriber<UUID> onMatch,
+                                                 @Nullable Runnable onComplete) {
+        return query(questPath, ProgressFilters.inProgressSubQuest(), onMatch, onComplete);
+    }
+
+    /**
+     * Stream the ID's of players that have a flag set in a quest.
+     *
+     * <p>Only players found using the quests flag index, or its progress store if
+     * the index is disabled, are checked in chunks across ticks. Includes offline
+     * players.</p>
+     *
+     * @param questPath   The path name of the quest.
+     * @param flagName    The name of the flag.
+     * @param onMatch     Invoked with the ID of each matching player.
+     * @param onComplete  Optional. Invoked once all players are checked.
+     */
+    public ProgressQuery queryFlag(String questPath, String flagName, IUpdateSubscriber<UUID> onMatch,
+                                   @Nullable Runnable onComplete) {
+        PreCon.notNullOrEmpty(flagName, "flagName");
+
+        return query(questPath, ProgressFilters.hasFlag(flagName), onMatch, onComplete);
+    }
+
+    /**
+     * Handle a quest event.
+     *
+     * <p>Event types are "accept", "finish", "cancel", "flag_set", "flag_clear"
+     * and "objective". The event object passed to the handler is reused and
+     * must not be kept.</p>
+     *
+     * @param questPath  The path name of the quest to handle events for. Null
+     *                   to handle events of all quests.
+     * @param eventType  The name of the event type.
+     * @param handler    The event handler.
+     */
+    public void onEvent(@Nullable String questPath, String eventType, IQuestEventHandler handler) {
+        PreCon.notNullOrEmpty(eventType, "eventType");
+        PreCon.notNull(handler, "handler");
+
+        QuestEventType type;
+        try {
+            type = QuestEventType.valueOf(eventType.toUpperCase());
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid quest event type: " + eventType);
+        }
+
+        QuestPath path = questPath != null
+                ? getQuest(questPath, false).getPath()
+                : null;
+
+        ArborianQuests.getQuestManager().getEventBus().addHandler(path, type, handler);
+        _eventHandlers.add(new EventHandler(path, type, handler));
+    }
+
+    /**
+     * Get the player statistics of a quest.
+     *
+     * @param questPath  The path name of the quest.
+     */
+    public QuestStats getStats(String questPath) {
+        PreCon.notNullOrEmpty(questPath, "questPath");
+
+        return getQuest(questPath, false).getStats();
+    }
+
     /**
      * Mark a players quest status as complete.
      *
@@ -494,5 +694,56 @@ public class QuestsApi implements IDisposable {
         Msg.tell(p, question);
         Msg.tell(p, Lang.get(_QUERY));
     }
-}
 
+    /**
+     * Run a callback once all quest progress changed so far has been written.
+     *
+     * <p>Use to acknowledge an action, such as giving a reward, only after
+     * the progress that records it cannot be lost.</p>
+     *
+     * @param callback  The callback to run.
+     */
+    public void whenSaved(final Runnable callback) {
+        PreCon.notNull(callback, "callback");
+
+        ArborianQuests.getSaveQueue().whenCommitted(new Runnable() {
+            @Override
+            public void run() {
+                if (!_isDisposed)
+                    callback.run();
+            }
+        });
+    }
+
+    private ProgressQuery query(String questPath, IProgressFilter filter,
+                                IUpdateSubscriber<UUID> onMatch, @Nullable Runnable onComplete) {
+        PreCon.notNullOrEmpty(questPath, "questPath");
+        PreCon.notNull(onMatch, "onMatch");
+
+        Quest quest = getQuest(questPath, false);
+
+        // forget finished queries so only running queries are cancelled on dispose
+        Iterator<ProgressQuery> iterator = _queries.iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().isRunning())
+                iterator.remove();
+        }
+
+        ProgressQuery query = ArborianQuests.getQuestManager().query(quest, filter, onMatch, onComplete);
+        _queries.add(query);
+
+        return query;
+    }
+
+    private static class EventHandler {
+        final QuestPath path;
+        final QuestEventType type;
+        final IQuestEventHandler handler;
+
+        EventHandler(@Nullable QuestPath path, QuestEventType type, IQuestEventHandler handler) {
+            this.path = path;
+            this.type = type;
+            this.handler = handler;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A group of changes written together by a single flush of the {@link SaveQueue}.
+ *
+ * <p>Callbacks added to the commit are invoked once every snapshot in the commit
+ * has been written. If any write fails, the callbacks are moved to the next commit,
+ * which includes the failed changes again.</p>
+ */
+class Commit {
+
+    final int sequence;
+    final List<Runnable> callbacks;
+    final AtomicInteger pendingLanes = new AtomicInteger();
+
+    volatile boolean isFailed;
+
+    /**
+     * Constructor.
+     *
+     * @param sequence   The sequence number of the commit.
+     * @param callbacks  The callbacks to invoke once the commit is written.
+     */
+    Commit(int sequence, List<Runnable> callbacks) {
+        this.sequence = sequence;
+        this.callbacks = new ArrayList<>(callbacks);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.storage;
+
+import com.jcwhatever.arborianquests.storage.DurableFiles.IFileWriter;
+import com.jcwhatever.nucleus.storage.IDataNode;
+import com.jcwhatever.nucleus.utils.PreCon;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Snapshot of a YAML data node.
+ *
+ * <p>The values of the node are copied into a detached {@link YamlConfiguration}
+ * on the main thread. Serializing the copy and writing it to the nodes file happen
+ * when the snapshot is written.</p>
+ */
+class DataNodeSnapshot implements ISaveSnapshot {
+
+    private final File _file;
+    private final YamlConfiguration _yaml = new YamlConfiguration();
+
+    /**
+     * Constructor.
+     *
+     * <p>Must be invoked on the main thread.</p>
+     *
+     * @param dataNode  The data node to copy.
+     * @param file      The file the node is stored in.
+     */
+    DataNodeSnapshot(IDataNode dataNode, File file) {
+        PreCon.notNull(dataNode);
+        PreCon.notNull(file);
+
+        _file = file;
+
+        copy(dataNode, "");
+    }
+
+    @Override
+    public File getFile() {
+        return _file;
+    }
+
+    @Override
+    public void write() throws IOException {
+
+        final byte[] data = _yaml.saveToString().getBytes(StandardCharsets.UTF_8);
+
+        DurableFiles.replace(_file, false, new IFileWriter() {
+            @Override
+            public void write(DataOutputStream out) throws IOException {
+                out.write(data);
+            }
+        });
+    }
+
+    // copy the values of a node and its sub nodes
+    private void copy(IDataNode dataNode, String prefix) {
+
+        for (String name : dataNode.getSubNodeNames()) {
+
+            String path = prefix + name;
+            IDataNode node = dataNode.getNode(name);
+
+            if (!node.getSubNodeNames().isEmpty()) {
+                copy(node, path + '.');
+                continue;
+            }
+
+            Object value = dataNode.get(name);
+            if (value == null)
+                continue;
+
+            if (value instanceof ConfigurationSection) {
+                _yaml.createSection(path);
+                continue;
+            }
+
+            _yaml.set(path, copyValue(value));
+        }
+    }
+
+    // copy mutable values and convert values that are stored as strings
+    private static Object copyValue(Object value) {
+
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            List<Object> result = new ArrayList<>(list.size());
+
+            for (Object element : list) {
+                result.add(element != null ? copyValue(element) : null);
+            }
+
+            return result;
+        }
+
+        if (value instanceof Enum)
+            return ((Enum<?>) value).name();
+
+        if (value instanceof UUID)
+            return value.toString();
+
+        return value;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.storage;
+
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Static utilities for writing files that optionally survive a crash.
+ *
+ * <p>When durable, a replaced file is written to a temporary file which is synced
+ * to disk and then renamed over the original, so the file always contains either
+ * the previous or the new contents. The folder is synced after the rename so the
+ * rename itself is not lost. Appended data is synced before returning.</p>
+ */
+public final class DurableFiles {
+
+    private DurableFiles() {}
+
+    /**
+     * Writes the contents of a file.
+     */
+    public interface IFileWriter {
+
+        /**
+         * Write the file contents.
+         *
+         * @param out  The output stream.
+         *
+         * @throws IOException
+         */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Replace the contents of a file.
+     *
+     * @param file       The file.
+     * @param isDurable  True to write to a temporary file, sync it and rename it
+     *                   over the file.
+     * @param writer     The writer that writes the new contents.
+     *
+     * @throws IOException
+     */
+    public static void replace(File file, boolean isDurable, IFileWriter writer) throws IOException {
+        PreCon.notNull(file);
+        PreCon.notNull(writer);
+
+        createFolder(file);
+
+        File target = isDurable
+                ? new File(file.getParentFile(), file.getName() + ".tmp")
+                : file;
+
+        try (FileOutputStream fileOut = new FileOutputStream(target);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+
+            writer.write(out);
+
+            if (isDurable) {
+                out.flush();
+                fileOut.getFD().sync();
+            }
+        }
+
+        if (!isDurable)
+            return;
+
+        try {
+            Files.move(target.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(target.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        syncFolder(file);
+    }
+
+    /**
+     * Append data to a file.
+     *
+     * @param file       The file.
+     * @param isDurable  True to sync the file before returning.
+     * @param data       The data to append.
+     *
+     * @throws IOException
+     */
+    public static void append(File file, boolean isDurable, byte[] data) throws IOException {
+        PreCon.notNull(file);
+        PreCon.notNull(data);
+
+        createFolder(file);
+
+        boolean isNew = isDurable && !file.exists();
+
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(data);
+
+            if (isDurable)
+                out.getFD().sync();
+        }
+
+        // the folder entry of a new file must also be synced
+        if (isNew)
+            syncFolder(file);
+    }
+
+    // Sync the folder that contains a file so that a rename or a new file
+    // survives a crash. Not all platforms can open a folder for syncing.
+    private static void syncFolder(File file) {
+
+        File folder = file.getAbsoluteFile().getParentFile();
+        if (folder == null)
+            return;
+
+        try (FileChannel channel = FileChannel.open(folder.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (IOException ignore) {
+            // not supported
+        }
+    }
+
+    private static void createFolder(File file) throws IOException {
+        File folder = file.getParentFile();
+        if (folder != null && !folder.exists() && !folder.mkdirs())
+            throw new IOException("Failed to create folder: " + folder);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.storage;
+
+/**
+ * An {@link IPersistable} that can create a snapshot of its data so that
+ * it can be written on a background thread.
+ */
+public interface IAsyncPersistable extends IPersistable {
+
+    /**
+     * Create an immutable snapshot of the current data.
+     *
+     * <p>Invoked on the main thread.</p>
+     */
+    ISaveSnapshot snapshot();
+
+    /**
+     * Invoked on the main thread when writing a snapshot failed.
+     *
+     * <p>Implementations should mark themselves dirty so that the changes
+     * in the failed snapshot are written again.</p>
+     *
+     * @param snapshot  The snapshot that failed.
+     */
+    void onSnapshotFailed(ISaveSnapshot snapshot);
+}
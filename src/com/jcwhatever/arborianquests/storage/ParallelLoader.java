@@ -0,0 +1,173 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.storage;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.jcwhatever.arborianquests.Msg;
+import com.jcwhatever.nucleus.storage.IDataNode;
+import com.jcwhatever.nucleus.utils.PreCon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads independent data nodes in parallel on a bounded pool of
+ * background threads.
+ *
+ * <p>Nodes are queued using {@link #load} and are loaded while the main thread
+ * continues. {@link #await} blocks until all queued nodes are loaded so
+ * registration of the loaded data can finish on the main thread.</p>
+ *
+ * <p>The time taken to load each file is logged.</p>
+ */
+public class ParallelLoader {
+
+    private final int _threads;
+    private final ExecutorService _executor;
+    private final List<LoadTask> _tasks = new ArrayList<>(25);
+    private final long _startTime = System.nanoTime();
+
+    /**
+     * Constructor.
+     *
+     * @param threads  The maximum number of loader threads.
+     */
+    public ParallelLoader(int threads) {
+        PreCon.greaterThanZero(threads);
+
+        _threads = threads;
+
+        final AtomicInteger count = new AtomicInteger();
+
+        _executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ArborianQuests-Loader-" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Get the maximum number of loader threads.
+     */
+    public int getThreads() {
+        return _threads;
+    }
+
+    /**
+     * Queue a data node to be loaded.
+     *
+     * <p>The node should not be used until {@link #await} returns.</p>
+     *
+     * @param name      The name of the file used when logging.
+     * @param dataNode  The data node to load.
+     *
+     * @return  The data node.
+     */
+    public IDataNode load(String name, IDataNode dataNode) {
+        PreCon.notNull(name);
+        PreCon.notNull(dataNode);
+
+        LoadTask task = new LoadTask(name, dataNode);
+        task.future = _executor.submit(task);
+
+        _tasks.add(task);
+
+        return dataNode;
+    }
+
+    /**
+     * Wait for all queued data nodes to finish loading and stop
+     * the loader threads.
+     */
+    public void await() {
+
+        _executor.shutdown();
+
+        LoadTask slowest = null;
+
+        for (LoadTask task : _tasks) {
+
+            try {
+                Uninterruptibles.getUninterruptibly(task.future);
+            }
+            catch (ExecutionException e) {
+                Msg.severe("Failed to load data file: {0}", task.name);
+                e.getCause().printStackTrace();
+                continue;
+            }
+
+            Msg.debug("Loaded {0} in {1}ms.", task.name, toMillis(task.elapsed));
+
+            if (!task.isLoaded)
+                Msg.warning("Failed to load data file: {0}", task.name);
+
+            if (slowest == null || task.elapsed > slowest.elapsed)
+                slowest = task;
+        }
+
+        if (slowest != null) {
+            Msg.info("Loaded {0} data files in {1}ms. Slowest: {2} ({3}ms)",
+                    _tasks.size(), toMillis(System.nanoTime() - _startTime),
+                    slowest.name, toMillis(slowest.elapsed));
+        }
+
+        _tasks.clear();
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static class LoadTask implements Runnable {
+
+        final String name;
+        final IDataNode dataNode;
+        Future<?> future;
+        volatile boolean isLoaded;
+        volatile long elapsed;
+
+        LoadTask(String name, IDataNode dataNode) {
+            this.name = name;
+            this.dataNode = dataNode;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            isLoaded = dataNode.load();
+            elapsed = System.nanoTime() - start;
+        }
+    }
+}
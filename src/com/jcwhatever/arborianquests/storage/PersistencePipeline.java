@@ -0,0 +1,229 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.storage;
+
+import com.jcwhatever.arborianquests.Msg;
+import com.jcwhatever.nucleus.managed.scheduler.Scheduler;
+import com.jcwhatever.nucleus.mixins.IDisposable;
+import com.jcwhatever.nucleus.mixins.IPluginOwned;
+import com.jcwhatever.nucleus.utils.PreCon;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * Writes {@link ISaveSnapshot}'s to disk on background threads.
+ *
+ * <p>Files are assigned to a fixed number of single threaded lanes using the
+ * hash of the file. All snapshots of the same file are written by the same lane,
+ * which guarantees that they are written in the order they were submitted.</p>
+ *
+ * <p>A barrier can be queued on every lane to find out when all snapshots of a
+ * {@link Commit} have been written. If a write fails, the snapshots owner is
+ * notified on the main thread so the changes can be written again.</p>
+ *
+ * <p>Disposing the pipeline waits for all submitted snapshots to be written.</p>
+ */
+public class PersistencePipeline implements IPluginOwned, IDisposable {
+
+    private static final int DRAIN_TIMEOUT_SECONDS = 60;
+
+    private final Plugin _plugin;
+    private final ExecutorService[] _lanes;
+    private final AtomicInteger _failures = new AtomicInteger();
+    private volatile boolean _isDisposed;
+
+    /**
+     * Constructor.
+     *
+     * @param plugin   The owning plugin.
+     * @param threads  The number of background writer threads.
+     */
+    public PersistencePipeline(Plugin plugin, int threads) {
+        PreCon.notNull(plugin);
+        PreCon.greaterThanZero(threads);
+
+        _plugin = plugin;
+        _lanes = new ExecutorService[threads];
+
+        for (int i = 0; i < threads; i++) {
+
+            final String name = "ArborianQuests-Writer-" + i;
+
+            _lanes[i] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, name);
+                }
+            });
+        }
+    }
+
+    @Override
+    public Plugin getPlugin() {
+        return _plugin;
+    }
+
+    /**
+     * Submit a snapshot to be written as part of a commit.
+     *
+     * <p>If the pipeline is disposed, the snapshot is written on the
+     * calling thread.</p>
+     *
+     * @param owner     The object the snapshot was taken from, notified if the write fails.
+     * @param snapshot  The snapshot to write.
+     * @param commit    The commit the snapshot is part of.
+     */
+    void submit(@Nullable final IAsyncPersistable owner, final ISaveSnapshot snapshot,
+                @Nullable final Commit commit) {
+        PreCon.notNull(snapshot);
+
+        if (_isDisposed) {
+            write(owner, snapshot, commit);
+            return;
+        }
+
+        int lane = (snapshot.getFile().hashCode() & 0x7FFFFFFF) % _lanes.length;
+
+        try {
+            _lanes[lane].execute(new Runnable() {
+                @Override
+                public void run() {
+                    write(owner, snapshot, commit);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            write(owner, snapshot, commit);
+        }
+    }
+
+    /**
+     * Queue a barrier on every lane that runs a task on the main thread once all
+     * snapshots submitted before the barrier are written.
+     *
+     * <p>If the pipeline is disposed, the task is not run.</p>
+     *
+     * @param commit      The commit.
+     * @param onComplete  The task to run on the main thread.
+     */
+    void barrier(final Commit commit, final Runnable onComplete) {
+        PreCon.notNull(commit);
+        PreCon.notNull(onComplete);
+
+        commit.pendingLanes.set(_lanes.length);
+
+        Runnable barrier = new Runnable() {
+            @Override
+            public void run() {
+                if (commit.pendingLanes.decrementAndGet() == 0 && !_isDisposed)
+                    Scheduler.runTaskSync(_plugin, onComplete);
+            }
+        };
+
+        for (ExecutorService lane : _lanes) {
+            try {
+                lane.execute(barrier);
+            }
+            catch (RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the total number of snapshots that failed to write.
+     */
+    public int getFailureCount() {
+        return _failures.get();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return _isDisposed;
+    }
+
+    /**
+     * Stop accepting snapshots and wait for all pending
+     * snapshots to be written.
+     */
+    @Override
+    public void dispose() {
+
+        if (_isDisposed)
+            return;
+
+        _isDisposed = true;
+
+        for (ExecutorService lane : _lanes) {
+            lane.shutdown();
+        }
+
+        for (ExecutorService lane : _lanes) {
+            try {
+                if (!lane.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                    Msg.severe("Timed out waiting for quest data to be written.");
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void write(@Nullable final IAsyncPersistable owner, final ISaveSnapshot snapshot,
+                       @Nullable Commit commit) {
+        try {
+            snapshot.write();
+        }
+        catch (IOException e) {
+            Msg.severe("Failed to write file: {0}", snapshot.getFile());
+            e.printStackTrace();
+
+            _failures.incrementAndGet();
+
+            if (commit != null)
+                commit.isFailed = true;
+
+            if (owner == null || _isDisposed)
+                return;
+
+            // write the changes again with the next commit
+            Scheduler.runTaskSync(_plugin, new Runnable() {
+                @Override
+                public void run() {
+                    owner.onSnapshotFailed(snapshot);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * This file is part of ArborianQuests for Bukkit, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) JCThePants (www.jcwhatever.com)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jcwhatever.arborianquests.storage;
+
+import com.jcwhatever.nucleus.managed.scheduler.IScheduledTask;
+import com.jcwhatever.nucleus.managed.scheduler.Scheduler;
+import com.jcwhatever.nucleus.mixins.IDisposable;
+import com.jcwhatever.nucleus.providers.storage.DataStorage;
+import com.jcwhatever.nucleus.storage.DataPath;
+import com.jcwhatever.nucleus.storage.IDataNode;
+import com.jcwhatever.nucleus.utils.PreCon;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Write-behind save queue for data nodes and other {@link IPersistable}'s.
+ *
+ * <p>Instead of saving a data node after every change, the node is marked dirty
+ * and saved on the next flush. Flushes run on a repeating task so each data file
+ * is written at most once per interval, regardless of how many changes were made
+ * to it in between.</p>
+ *
+ * <p>{@link IAsyncPersistable}'s are snapshotted during the flush and the snapshot
+ * is handed to a {@link PersistencePipeline} so that serialization and file I/O
+ * happen off of the main thread. Data nodes retrieved using {@link #getDataNode}
+ * are written the same way by copying their values during the flush. Other data
+ * nodes are saved on the main thread.</p>
+ *
+ * <p>Each flush is a group commit: all changes made during the interval are written
+ * together. Callbacks added using {@link #whenCommitted} are invoked once the commit
+ * that includes all changes made before the callback was added has been written.
+ * A commit that fails is retried with the next flush before its callbacks are
+ * invoked.</p>
+ */
+public class SaveQueue implements IDisposable {
+
+    private final Set<IDataNode> _dirty = new LinkedHashSet<>(25);
+    private final Set<IPersistable> _dirtyPersistables = new LinkedHashSet<>(25);
+    private final List<IDataNode> _flushing = new ArrayList<>(25);
+    private final List<IPersistable> _flushingPersistables = new ArrayList<>(25);
+    private final List<Runnable> _callbacks = new ArrayList<>(5);
+    private final Map<IDataNode, DataNodeFile> _files = new HashMap<>(25);
+    private final PersistencePipeline _pipeline;
+    private final IScheduledTask _task;
+
+    private boolean _isDisposed;
+    private int _nextSequence;
+    private int _seenFailures;
+    private int _unsafeUntil;
+
+    /**
+     * Constructor.
+     *
+     * @param plugin         The owning plugin.
+     * @param pipeline       The pipeline used to write snapshots.
+     * @param intervalTicks  The interval in ticks between flushes.
+     */
+    public SaveQueue(Plugin plugin, PersistencePipeline pipeline, int intervalTicks) {
+        PreCon.notNull(plugin);
+        PreCon.notNull(pipeline);
+        PreCon.greaterThanZero(intervalTicks);
+
+        _pipeline = pipeline;
+
+        _task = Scheduler.runTaskRepeat(plugin, intervalTicks, intervalTicks, new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+    /**
+     * Get a YAML data node from data storage and register it so that it is
+     * written by the persistence pipeline.
+     *
+     * <p>The node is stored in the file at the storage path, with the dot delimiters
+     * replaced by folders, relative to the plugins data folder. The node must not be
+     * saved directly since the write could be reordered with pending writes.</p>
+     *
+     * @param plugin  The owning plugin.
+     * @param path    The dot delimited storage path.
+     */
+    public IDataNode getDataNode(Plugin plugin, String path) {
+        PreCon.notNull(plugin);
+        PreCon.notNullOrEmpty(path);
+
+        IDataNode dataNode = DataStorage.get(plugin, new DataPath(path));
+        File file = new File(plugin.getDataFolder(), path.replace('.', File.separatorChar) + ".yml");
+
+        _files.put(dataNode.getRoot(), new DataNodeFile(dataNode.getRoot(), file));
+
+        return dataNode;
+    }
+
+    /**
+     * Stop tracking a data node retrieved using {@link #getDataNode} that is
+     * no longer used.
+     *
+     * <p>A pending save of the node is still written.</p>
+     *
+     * @param dataNode  The data node.
+     */
+    public void unregister(IDataNode dataNode) {
+        PreCon.notNull(dataNode);
+
+        _files.remove(dataNode.getRoot());
+    }
+
+    /**
+     * Remove a data node whose file is deleted.
+     *
+     * <p>Discards a pending save of the node. If the node was retrieved using
+     * {@link #getDataNode}, the file is deleted again once writes of the node that
+     * are already in the persistence pipeline are finished so they do not
+     * recreate the file.</p>
+     *
+     * @param dataNode  The data node.
+     */
+    public void remove(IDataNode dataNode) {
+        PreCon.notNull(dataNode);
+
+        discard(dataNode);
+
+        DataNodeFile file = _files.remove(dataNode.getRoot());
+        if (file != null)
+            _pipeline.submit(null, new DeleteSnapshot(file.file), null);
+    }
+
+    /**
+     * Mark a data node as changed so it is saved on the next flush.
+     *
+     * <p>The nodes root is queued so that changes to several child nodes
+     * of the same file only cause a single save.</p>
+     *
+     * @param dataNode  The changed data node.
+     */
+    public void markDirty(IDataNode dataNode) {
+        PreCon.notNull(dataNode);
+
+        IDataNode root = dataNode.getRoot();
+
+        DataNodeFile file = _files.get(root);
+        if (file != null) {
+            _dirtyPersistables.add(file);
+        }
+        else {
+            _dirty.add(root);
+        }
+    }
+
+    /**
+     * Mark a persistable object as changed so it is saved on the next flush.
+     *
+     * @param persistable  The changed object.
+     */
+    public void markDirty(IPersistable persistable) {
+        PreCon.notNull(persistable);
+
+        _dirtyPersistables.add(persistable);
+    }
+
+    /**
+     * Remove a data node from the queue without saving it.
+     *
+     * <p>Used when the nodes file is deleted so a pending save does not
+     * write it back.</p>
+     *
+     * @param dataNode  The data node.
+     *
+     * @return  True if the node was queued.
+     */
+    public boolean discard(IDataNode dataNode) {
+        PreCon.notNull(dataNode);
+
+        IDataNode root = dataNode.getRoot();
+
+        DataNodeFile file = _files.get(root);
+        if (file != null && _dirtyPersistables.remove(file))
+            return true;
+
+        return _dirty.remove(root);
+    }
+
+    /**
+     * Remove a persistable object from the queue without saving it.
+     *
+     * @param persistable  The object.
+     */
+    public void discard(IPersistable persistable) {
+        PreCon.notNull(persistable);
+
+        _dirtyPersistables.remove(persistable);
+    }
+
+    /**
+     * Invoke a callback on the main thread once all changes made so far
+     * have been written.
+     *
+     * @param callback  The callback.
+     */
+    public void whenCommitted(Runnable callback) {
+        PreCon.notNull(callback);
+
+        _callbacks.add(callback);
+    }
+
+    /**
+     * Determine if there are any unsaved nodes in the queue.
+     */
+    public boolean isDirty() {
+        return !_dirty.isEmpty() || !_dirtyPersistables.isEmpty();
+    }
+
+    /**
+     * Save all dirty nodes immediately.
+     */
+    public void flush() {
+
+        if (!isDirty() && _callbacks.isEmpty())
+            return;
+
+        final Commit commit = new Commit(_nextSequence++, _callbacks);
+        _callbacks.clear();
+
+        if (!_dirty.isEmpty()) {
+
+            _flushing.addAll(_dirty);
+            _dirty.clear();
+
+            for (IDataNode dataNode : _flushing) {
+                if (!dataNode.save()) {
+                    commit.isFailed = true;
+                    _dirty.add(dataNode);
+                }
+            }
+
+            _flushing.clear();
+        }
+
+        if (!_dirtyPersistables.isEmpty()) {
+
+            _flushingPersistables.addAll(_dirtyPersistables);
+            _dirtyPersistables.clear();
+
+            for (IPersistable persistable : _flushingPersistables) {
+
+                if (persistable instanceof IAsyncPersistable) {
+                    IAsyncPersistable async = (IAsyncPersistable) persistable;
+                    _pipeline.submit(async, async.snapshot(), commit);
+                }
+                else {
+                    persistable.save();
+                }
+            }
+
+            _flushingPersistables.clear();
+        }
+
+        if (commit.callbacks.isEmpty())
+            return;
+
+        _pipeline.barrier(commit, new Runnable() {
+            @Override
+            public void run() {
+                onCommitted(commit);
+            }
+        });
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return _isDisposed;
+    }
+
+    @Override
+    public void dispose() {
+
+        if (_isDisposed)
+            return;
+
+        _isDisposed = true;
+        _task.cancel();
+
+        flush();
+    }
+
+    // invoked on the main thread once a commit is written
+    private void onCommitted(Commit commit) {
+
+        // Failed snapshots are marked dirty again by their owners before this runs
+        // and are included in the next commit. Callbacks of earlier commits must wait
+        // for it since they may depend on the failed changes.
+        int failures = _pipeline.getFailureCount();
+        if (failures != _seenFailures) {
+            _seenFailures = failures;
+            _unsafeUntil = _nextSequence;
+        }
+
+        if (commit.isFailed || commit.sequence < _unsafeUntil) {
+            _callbacks.addAll(commit.callbacks);
+            return;
+        }
+
+        for (Runnable callback : commit.callbacks) {
+            try {
+                callback.run();
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /*
+     * Writes a registered data node using snapshots.
+     */
+    private class DataNodeFile implements IAsyncPersistable {
+
+        final IDataNode dataNode;
+        final File file;
+
+        DataNodeFile(IDataNode dataNode, File file) {
+            this.dataNode = dataNode;
+            this.file = file;
+        }
+
+        @Override
+        public ISaveSnapshot snapshot() {
+            return new DataNodeSnapshot(dataNode, file);
+        }
+
+        @Override
+        public void onSnapshotFailed(ISaveSnapshot snapshot) {
+            _dirtyPersistables.add(this);
+        }
+
+        @Override
+        public void save() {
+            _pipeline.submit(this, snapshot(), null);
+        }
+    }
+
+    /*
+     * Deletes the file of a removed data node.
+     */
+    private static class DeleteSnapshot implements ISaveSnapshot {
+
+        final File file;
+
+        DeleteSnapshot(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public File getFile() {
+            return file;
+        }
+
+        @Override
+        public void write() throws IOException {
+            if (file.exists() && !file.delete())
+                throw new IOException("Failed to delete file: " + file);
+        }
+    }
+}
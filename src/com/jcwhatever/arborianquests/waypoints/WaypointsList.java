@@ -24,6 +24,7 @@
 
 package com.jcwhatever.arborianquests.waypoints;
 
+import com.jcwhatever.arborianquests.ArborianQuests;
 import com.jcwhatever.nucleus.collections.wrap.ListWrapper;
 import com.jcwhatever.nucleus.mixins.INamedInsensitive;
 import com.jcwhatever.nucleus.storage.IDataNode;
@@ -46,6 +47,7 @@ public class WaypointsList extends ListWrapper<Location> implements INamedInsens
     private final String _name;
     private final String _searchName;
     private final List<Location> _list;
+    private final List<Location> _saved;
     private final IDataNode _dataNode;
 
     /**
@@ -70,6 +72,12 @@ public class WaypointsList extends ListWrapper<Location> implements INamedInsens
             Waypoint waypoint = toSort.remove();
             _list.add(waypoint.location);
         }
+
+        _saved = new ArrayList<>(_list);
+
+        // node names are not contiguous, rewrite so they match the saved list
+        if (!isSavedContiguous())
+            rewrite();
     }
 
     /**
@@ -125,13 +133,53 @@ public class WaypointsList extends ListWrapper<Location> implements INamedInsens
         save();
     }
 
+    /*
+     * Write the changed entries to the data node. Entries before the first changed
+     * index are left as is so that adding to the end of the list only writes
+     * the new entry.
+     */
     private void save() {
+
+        int start = 0;
+        int total = Math.min(_list.size(), _saved.size());
+
+        while (start < total && _list.get(start) == _saved.get(start)) {
+            start++;
+        }
+
+        if (start == _list.size() && start == _saved.size())
+            return;
+
+        for (int i = start; i < _list.size(); i++) {
+            _dataNode.set("l" + i, _list.get(i));
+        }
+
+        // remove entries past the end of the list
+        for (int i = _list.size(); i < _saved.size(); i++) {
+            _dataNode.remove("l" + i);
+        }
+
+        _saved.clear();
+        _saved.addAll(_list);
+
+        ArborianQuests.getSaveQueue().markDirty(_dataNode);
+    }
+
+    private void rewrite() {
         _dataNode.clear();
 
         for (int i=0; i < _list.size(); i++) {
             _dataNode.set("l" + i, _list.get(i));
         }
-        _dataNode.save();
+        ArborianQuests.getSaveQueue().markDirty(_dataNode);
+    }
+
+    private boolean isSavedContiguous() {
+        for (int i=0; i < _saved.size(); i++) {
+            if (!_dataNode.hasNode("l" + i))
+                return false;
+        }
+        return _dataNode.size() == _saved.size();
     }
 
     private static class Waypoint implements Comparable<Waypoint> {